@@ -0,0 +1,119 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.block.BlockType;
+import org.spongepowered.api.world.World;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the conversions of the adapter and the block reads of the world. Every
+ * invocation processes {@link #OPERATIONS} values. The item stack conversion is
+ * measured by the {@link ItemStackBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdapterBenchmark {
+
+    private static final int OPERATIONS = 4096;
+
+    private LanternImplAdapter adapter;
+    private LanternWEWorld world;
+    private BlockType[] blockTypes;
+    private BaseBlock[] baseBlocks;
+    private Vector[] positions;
+
+    @Setup
+    public void setup() {
+        TestFixtures.installScheduler();
+        final BlockState[] states = TestFixtures.installBlockStateTable();
+        final World world = TestFixtures.createWorld(1, states[1 << 4]);
+        this.adapter = new LanternImplAdapter();
+        this.world = (LanternWEWorld) this.adapter.getWorld(world);
+        this.blockTypes = new BlockType[OPERATIONS];
+        this.baseBlocks = new BaseBlock[OPERATIONS];
+        this.positions = new Vector[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            final int id = i % TestFixtures.BLOCK_TYPES;
+            this.blockTypes[i] = states[id << 4].getType();
+            this.baseBlocks[i] = new BaseBlock(id, i & 0xf);
+            this.positions[i] = new Vector(i & 0xf, 64 + (i >> 8), (i >> 4) & 0xf);
+        }
+    }
+
+    @Benchmark
+    public void resolveBlockType(Blackhole blackhole) {
+        for (BlockType blockType : this.blockTypes) {
+            blackhole.consume(this.adapter.resolve(blockType));
+        }
+    }
+
+    @Benchmark
+    public void resolveBlock(Blackhole blackhole) {
+        for (int i = 0; i < OPERATIONS; i++) {
+            blackhole.consume(this.adapter.resolveBlock(i % TestFixtures.BLOCK_TYPES));
+        }
+    }
+
+    @Benchmark
+    public void getBlockState(Blackhole blackhole) {
+        for (BaseBlock baseBlock : this.baseBlocks) {
+            blackhole.consume(this.world.getBlockState(baseBlock));
+        }
+    }
+
+    @Benchmark
+    public void getBlock(Blackhole blackhole) {
+        for (Vector position : this.positions) {
+            blackhole.consume(this.world.getBlock(position));
+        }
+    }
+
+    @Benchmark
+    public void getLazyBlock(Blackhole blackhole) {
+        for (Vector position : this.positions) {
+            blackhole.consume(this.world.getLazyBlock(position));
+        }
+    }
+}
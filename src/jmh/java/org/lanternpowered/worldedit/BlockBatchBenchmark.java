@@ -0,0 +1,99 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.world.World;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares applying a cuboid of block changes through the per-block
+ * path of WorldEdit, {@code setBlock} of the world, with the chunk
+ * batched path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockBatchBenchmark {
+
+    private static final int CHUNKS = 4;
+    private static final int HEIGHT = 64;
+
+    private LanternWEWorld world;
+    private BaseBlock block;
+
+    @Setup
+    public void setup() {
+        TestFixtures.installScheduler();
+        final BlockState[] states = TestFixtures.installBlockStateTable();
+        final World world = TestFixtures.createWorld(CHUNKS, states[0]);
+        TestFixtures.installRegistry(world);
+        this.world = (LanternWEWorld) new LanternImplAdapter().getWorld(world);
+        this.block = new BaseBlock(1, 0);
+    }
+
+    @Benchmark
+    public void perBlock() throws WorldEditException {
+        final int size = CHUNKS << 4;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int z = 0; z < size; z++) {
+                for (int x = 0; x < size; x++) {
+                    this.world.setBlock(new Vector(x, y, z), this.block, true);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void batched() {
+        final int size = CHUNKS << 4;
+        final BlockBatch batch = new BlockBatch();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int z = 0; z < size; z++) {
+                for (int x = 0; x < size; x++) {
+                    batch.set(x, y, z, this.world.getBlockState(this.block), null);
+                }
+            }
+        }
+        this.world.applyBatch(batch, this.world.getMetrics(), false);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.jnbt.CompoundTag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongepowered.api.data.DataView;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the conversions between data views and nbt. Most of the cost of
+ * these conversions is allocation, run them with the gc profiler to measure
+ * the allocated bytes per conversion:
+ * {@code ./gradlew jmh -PjmhInclude=DataViewNbtBenchmark -PjmhProfilers=gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataViewNbtBenchmark {
+
+    @Param({ "chest", "sign", "spawner" })
+    public String payload;
+
+    private DataView dataView;
+    private CompoundTag tag;
+
+    @Setup
+    public void setup() {
+        switch (this.payload) {
+            case "chest":
+                this.dataView = TestFixtures.createChest();
+                break;
+            case "sign":
+                this.dataView = TestFixtures.createSign();
+                break;
+            case "spawner":
+                this.dataView = TestFixtures.createSpawner();
+                break;
+            default:
+                throw new IllegalArgumentException(this.payload);
+        }
+        this.tag = DataViewNbt.to(this.dataView);
+    }
+
+    @Benchmark
+    public CompoundTag to() {
+        return DataViewNbt.to(this.dataView);
+    }
+
+    @Benchmark
+    public DataViewNbt.LazyTag toLazy() {
+        return DataViewNbt.toLazy(this.dataView);
+    }
+
+    @Benchmark
+    public DataView from() {
+        return DataViewNbt.from(this.tag);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.worldedit.blocks.BaseItemStack;
+import org.lanternpowered.server.data.io.store.ObjectStore;
+import org.lanternpowered.server.data.io.store.ObjectStoreRegistry;
+import org.lanternpowered.server.game.registry.type.item.EnchantmentRegistryModule;
+import org.lanternpowered.server.game.registry.type.item.ItemRegistryModule;
+import org.lanternpowered.server.inventory.LanternItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.DataQuery;
+import org.spongepowered.api.data.DataView;
+import org.spongepowered.api.data.key.Keys;
+import org.spongepowered.api.data.meta.ItemEnchantment;
+import org.spongepowered.api.item.Enchantment;
+import org.spongepowered.api.item.ItemType;
+import org.spongepowered.api.item.inventory.ItemStack;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares {@link LanternImplAdapter#makeSpongeStack(BaseItemStack)}, which copies
+ * the prototypes of the {@link ItemStackCache}, with the conversion that was used
+ * before the cache. Every invocation converts {@link #OPERATIONS} item stacks.
+ *
+ * <p>Both conversions create real {@link LanternItemStack}s, so this benchmark
+ * requires the item and enchantment registries of Lantern to be initialized, it
+ * fails during the setup otherwise.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemStackBenchmark {
+
+    private static final int OPERATIONS = 4096;
+    private static final int ITEM_TYPES = 64;
+
+    private static final DataQuery DATA_VALUE = DataQuery.of("dataVal007");
+
+    private LanternImplAdapter adapter;
+    private BaseItemStack[] itemStacks;
+
+    @Setup
+    public void setup() {
+        if (!ItemRegistryModule.get().getTypeByInternalId(256).isPresent()) {
+            throw new IllegalStateException("The item registry of Lantern isn't initialized.");
+        }
+        this.adapter = new LanternImplAdapter();
+        // A mix of plain and enchanted items, every type is used with a few amounts
+        this.itemStacks = new BaseItemStack[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            final int type = i % ITEM_TYPES;
+            this.itemStacks[i] = new BaseItemStack(256 + type, 1 + (i & 0x3f), (short) 0);
+            if ((type & 0x1) != 0) {
+                this.itemStacks[i].getEnchantments().put(32 + (type & 0x3), 3);
+            }
+        }
+    }
+
+    @Benchmark
+    public void cached(Blackhole blackhole) {
+        for (BaseItemStack itemStack : this.itemStacks) {
+            blackhole.consume(this.adapter.makeSpongeStack(itemStack));
+        }
+    }
+
+    @Benchmark
+    public void uncached(Blackhole blackhole) {
+        for (BaseItemStack itemStack : this.itemStacks) {
+            blackhole.consume(makeUncachedStack(itemStack));
+        }
+    }
+
+    /**
+     * The conversion of {@link LanternImplAdapter#makeSpongeStack(BaseItemStack)}
+     * before the {@link ItemStackCache} was added.
+     */
+    @SuppressWarnings("unchecked")
+    private static ItemStack makeUncachedStack(BaseItemStack baseItemStack) {
+        final ItemType itemType = ItemRegistryModule.get().getTypeByInternalId(baseItemStack.getType())
+                .orElseThrow(() -> new IllegalStateException("Invalid item type: " + baseItemStack.getType()));
+        final LanternItemStack itemStack = new LanternItemStack(itemType, baseItemStack.getAmount());
+        final ObjectStore<LanternItemStack> store = ObjectStoreRegistry.get().get(LanternItemStack.class)
+                .orElseThrow(() -> new IllegalStateException("Unable to access the LanternItemStack store."));
+        final DataView view = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+        view.set(DATA_VALUE, baseItemStack.getData());
+        store.deserialize(itemStack, view);
+        final Map<Integer, Integer> enchantments = baseItemStack.getEnchantments();
+        if (!enchantments.isEmpty()) {
+            itemStack.offer(Keys.ITEM_ENCHANTMENTS, enchantments.entrySet().stream()
+                    .map(entry -> {
+                        final Enchantment enchantment = EnchantmentRegistryModule.get().getByInternalId(entry.getKey())
+                                .orElseThrow(() -> new IllegalStateException("Invalid enchantment type: " + entry.getKey()));
+                        return new ItemEnchantment(enchantment, entry.getValue());
+                    })
+                    .collect(Collectors.toList()));
+        }
+        return itemStack;
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.Vector2D;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.entity.BaseEntity;
+import com.sk89q.worldedit.entity.Entity;
+import com.sk89q.worldedit.extension.platform.Actor;
+import com.sk89q.worldedit.extent.AbstractDelegateExtent;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.extent.reorder.MultiStageReorder;
+import com.sk89q.worldedit.extent.world.FastModeExtent;
+import com.sk89q.worldedit.extent.world.SurvivalModeExtent;
+import com.sk89q.worldedit.function.operation.Operation;
+import com.sk89q.worldedit.function.operation.RunContext;
+import com.sk89q.worldedit.util.Location;
+import com.sk89q.worldedit.world.biome.BaseBiome;
+import org.spongepowered.api.block.BlockState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * A extent that collects all the block changes of an edit session
+ * and applies them chunk by chunk to the {@link LanternWEWorld} once
+ * the edit session is committed. Tile and entity data is applied
+ * after all the blocks are placed.
+ *
+ * <p>The changes are only collected while the queue of the edit session
+ * is enabled, otherwise they are passed through to the extents below,
+ * which apply them immediately.</p>
+ */
+final class BatchingExtent extends AbstractDelegateExtent {
+
+    private final LanternWEWorld world;
+    @Nullable private final Actor actor;
+    private final EditMetrics metrics;
+
+    @Nullable private final FastModeExtent fastModeExtent;
+    @Nullable private final SurvivalModeExtent survivalExtent;
+    @Nullable private MultiStageReorder reorderExtent;
+
+    private BlockBatch batch = new BlockBatch();
+    private List<PendingEntity> entities = new ArrayList<>();
+
+    /**
+     * The pending biome changes per chunk column, see
+     * {@link LanternWEWorld#setBiomes(int, int, int[])}.
+     */
+    private final Map<Long, int[]> biomes = new LinkedHashMap<>();
+
+    @Nullable private PackedHistory history;
+
+    BatchingExtent(Extent extent, LanternWEWorld world, @Nullable Actor actor) {
+        super(extent);
+        this.world = world;
+        this.actor = actor;
+        this.metrics = world.getMetrics().createEditMetrics();
+        this.fastModeExtent = findExtent(extent, FastModeExtent.class);
+        this.survivalExtent = findExtent(extent, SurvivalModeExtent.class);
+    }
+
+    /**
+     * Links the {@link MultiStageReorder} within the given {@link Extent} to
+     * the {@link BatchingExtent} below it, the changes are only batched
+     * while the reorder extent is enabled.
+     *
+     * @param extent The extent
+     */
+    static void linkReorderExtent(Extent extent) {
+        final MultiStageReorder reorderExtent = findExtent(extent, MultiStageReorder.class);
+        if (reorderExtent == null) {
+            return;
+        }
+        final BatchingExtent batchingExtent = findExtent(reorderExtent.getExtent(), BatchingExtent.class);
+        if (batchingExtent != null) {
+            batchingExtent.reorderExtent = reorderExtent;
+        }
+    }
+
+    /**
+     * Gets whether the changes are currently batched. Without a enabled queue, the
+     * changes are expected to be applied immediately. Tool use in survival mode
+     * mines the blocks instead of replacing them, so it isn't batched either.
+     *
+     * @return Whether the changes are batched
+     */
+    boolean isBatching() {
+        return this.reorderExtent != null && this.reorderExtent.isEnabled() &&
+                (this.survivalExtent == null || !this.survivalExtent.isToolUse());
+    }
+
+    @Override
+    public boolean setBlock(Vector location, BaseBlock block) throws WorldEditException {
+        if (!isBatching()) {
+            // Keep the order with the changes that were batched before
+            applyPending();
+            return super.setBlock(location, block);
+        }
+        final BlockState state = this.world.getBlockState(block, this.metrics);
+        if (state == null) {
+            return false;
+        }
+        return this.batch.set(location.getBlockX(), location.getBlockY(), location.getBlockZ(), state, block.getNbtData());
+    }
+
+    /**
+     * Queues the block state directly, without converting it
+     * from a {@link BaseBlock}. May only be used while the
+     * changes are batched, see {@link #isBatching()}.
+     *
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @param z The z coordinate
+     * @param state The block state
+     * @param tileData The tile entity data, if present
+     */
+    void setBlockState(int x, int y, int z, BlockState state, @Nullable CompoundTag tileData) {
+        this.batch.set(x, y, z, state, tileData);
+    }
+
+    LanternWEWorld getWorld() {
+        return this.world;
+    }
+
+    EditMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Sets the {@link PackedHistory} that records the changes of
+     * the edit session, it will be sealed when this extent is flushed.
+     *
+     * @param history The packed history
+     */
+    void setHistory(PackedHistory history) {
+        this.history = history;
+    }
+
+    @Override
+    public BaseBlock getBlock(Vector position) {
+        final int x = position.getBlockX();
+        final int y = position.getBlockY();
+        final int z = position.getBlockZ();
+        final BlockState state = this.batch.get(x, y, z);
+        if (state == null) {
+            return super.getBlock(position);
+        }
+        return this.world.createBaseBlock(state, this.batch.getTileData(x, y, z));
+    }
+
+    @Override
+    public BaseBlock getLazyBlock(Vector position) {
+        final int x = position.getBlockX();
+        final int y = position.getBlockY();
+        final int z = position.getBlockZ();
+        final BlockState state = this.batch.get(x, y, z);
+        if (state == null) {
+            return super.getLazyBlock(position);
+        }
+        return this.world.createBaseBlock(state, this.batch.getTileData(x, y, z));
+    }
+
+    @Override
+    public BaseBiome getBiome(Vector2D position) {
+        final int x = position.getBlockX();
+        final int z = position.getBlockZ();
+        final int[] biomes = this.biomes.get(BlockBatch.key(x >> 4, z >> 4));
+        if (biomes != null && biomes[(z & 0xf) << 4 | (x & 0xf)] >= 0) {
+            return new BaseBiome(biomes[(z & 0xf) << 4 | (x & 0xf)]);
+        }
+        return super.getBiome(position);
+    }
+
+    @Override
+    public boolean setBiome(Vector2D position, BaseBiome biome) {
+        if (!isBatching()) {
+            applyPending();
+            return super.setBiome(position, biome);
+        }
+        if (BiomeTable.get().getType(biome.getId()) == null) {
+            return false;
+        }
+        final int x = position.getBlockX();
+        final int z = position.getBlockZ();
+        final int[] biomes = this.biomes.computeIfAbsent(BlockBatch.key(x >> 4, z >> 4), key -> {
+            final int[] array = new int[LanternWEWorld.CHUNK_AREA];
+            Arrays.fill(array, -1);
+            return array;
+        });
+        biomes[(z & 0xf) << 4 | (x & 0xf)] = biome.getId();
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Entity createEntity(Location location, BaseEntity entity) {
+        if (!isBatching()) {
+            applyPending();
+            return super.createEntity(location, entity);
+        }
+        final PendingEntity pendingEntity = new PendingEntity(this.entities, location, entity);
+        this.entities.add(pendingEntity);
+        return pendingEntity;
+    }
+
+    @Override
+    protected Operation commitBefore() {
+        return new FlushOperation();
+    }
+
+    /**
+     * Applies all the pending changes to the world.
+     */
+    void flush() {
+        if (this.history != null) {
+            this.history.seal();
+        }
+        applyPending();
+    }
+
+    private void applyPending() {
+        if (!this.biomes.isEmpty()) {
+            // The biomes are applied directly, this is cheap compared to the blocks
+            for (Map.Entry<Long, int[]> entry : this.biomes.entrySet()) {
+                final long key = entry.getKey();
+                this.world.setBiomes((int) (key >> 32), (int) key, entry.getValue());
+            }
+            this.biomes.clear();
+        }
+        final EditScheduler scheduler = LanternWorldEdit.get().getScheduler();
+        if (scheduler.shouldSchedule(this.world, this.batch)) {
+            // Large edits are applied over multiple ticks, the
+            // entities will be spawned once all the blocks are placed
+            final List<PendingEntity> entities = this.entities;
+            scheduler.schedule(this.world, this.batch, this.metrics, isFastMode(), this.actor, () -> spawnEntities(entities));
+            this.batch = new BlockBatch();
+            this.entities = new ArrayList<>();
+            return;
+        }
+        if (!this.batch.isEmpty()) {
+            this.world.applyBatch(this.batch, this.metrics, isFastMode());
+            this.batch.clear();
+        }
+        if (!this.entities.isEmpty()) {
+            spawnEntities(this.entities);
+            this.entities.clear();
+        }
+    }
+
+    /**
+     * Gets whether fast mode is enabled for the edit session, this
+     * is controlled by the {@link FastModeExtent} below this extent.
+     *
+     * @return Whether fast mode is enabled
+     */
+    private boolean isFastMode() {
+        return this.fastModeExtent != null && this.fastModeExtent.isEnabled();
+    }
+
+    /**
+     * Searches the {@link Extent} of the given type, starting
+     * at the given extent and following the delegate extents.
+     *
+     * @param extent The extent to start at
+     * @param type The type of the extent
+     * @param <T> The type of the extent
+     * @return The extent, or {@code null} if not found
+     */
+    @Nullable
+    static <T extends Extent> T findExtent(Extent extent, Class<T> type) {
+        while (true) {
+            if (type.isInstance(extent)) {
+                return type.cast(extent);
+            }
+            if (!(extent instanceof AbstractDelegateExtent)) {
+                return null;
+            }
+            extent = ((AbstractDelegateExtent) extent).getExtent();
+        }
+    }
+
+    private void spawnEntities(List<PendingEntity> entities) {
+        // The entities are spawned in batches per chunk
+        final List<org.spongepowered.api.entity.Entity> created = this.world.createEntities(entities);
+        for (int i = 0; i < entities.size(); i++) {
+            entities.get(i).created = created.get(i);
+        }
+    }
+
+    private final class FlushOperation implements Operation {
+
+        @Nullable
+        @Override
+        public Operation resume(RunContext run) throws WorldEditException {
+            flush();
+            return null;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public void addStatusMessages(List<String> messages) {
+        }
+    }
+
+    /**
+     * A entity that will be spawned after all the blocks are applied.
+     */
+    private static final class PendingEntity implements Entity {
+
+        // The list of pending entities this entity was added to
+        private final List<PendingEntity> pending;
+        private final Location location;
+        private final BaseEntity state;
+
+        // The entity that was created in the world, once the pending entities are spawned
+        @Nullable private org.spongepowered.api.entity.Entity created;
+
+        private PendingEntity(List<PendingEntity> pending, Location location, BaseEntity state) {
+            this.pending = pending;
+            this.location = location;
+            this.state = state;
+        }
+
+        @Override
+        public BaseEntity getState() {
+            return this.state;
+        }
+
+        @Override
+        public boolean remove() {
+            final org.spongepowered.api.entity.Entity created = this.created;
+            if (created != null) {
+                // Remove the entity from the world, e.g. when the paste is undone
+                created.remove();
+                this.created = null;
+                return true;
+            }
+            return this.pending.remove(this);
+        }
+
+        @Override
+        public Location getLocation() {
+            return this.location;
+        }
+
+        @Override
+        public Extent getExtent() {
+            return this.location.getExtent();
+        }
+
+        @Nullable
+        @Override
+        public <T> T getFacet(Class<? extends T> cls) {
+            return null;
+        }
+    }
+}
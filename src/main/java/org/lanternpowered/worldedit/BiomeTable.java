@@ -0,0 +1,125 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import org.lanternpowered.server.game.registry.type.world.biome.BiomeRegistryModule;
+import org.spongepowered.api.world.biome.BiomeType;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * A precomputed translation table between the
+ * legacy biome ids and the {@link BiomeType}s.
+ */
+final class BiomeTable {
+
+    private static final int BIOME_IDS = 256;
+
+    @Nullable private static volatile BiomeTable instance;
+
+    /**
+     * Gets the current {@link BiomeTable}, the
+     * table will be build if it isn't present.
+     *
+     * @return The biome table
+     */
+    static BiomeTable get() {
+        BiomeTable table = instance;
+        if (table == null) {
+            synchronized (BiomeTable.class) {
+                table = instance;
+                if (table == null) {
+                    instance = table = build();
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Invalidates the current {@link BiomeTable}, it will be
+     * rebuild the next time that it's requested. This should be
+     * called when the contents of the biome registry change.
+     */
+    static void invalidate() {
+        instance = null;
+    }
+
+    private static BiomeTable build() {
+        final BiomeRegistryModule registry = BiomeRegistryModule.get();
+        final BiomeType[] typesById = new BiomeType[BIOME_IDS];
+        final Map<BiomeType, Integer> idByType = new IdentityHashMap<>();
+        for (int id = 0; id < BIOME_IDS; id++) {
+            final BiomeType biomeType = registry.getByInternalId(id).orElse(null);
+            if (biomeType != null) {
+                typesById[id] = biomeType;
+                idByType.computeIfAbsent(biomeType, registry::getInternalId);
+            }
+        }
+        return new BiomeTable(typesById, idByType);
+    }
+
+    private final BiomeType[] typesById;
+    private final Map<BiomeType, Integer> idByType;
+
+    BiomeTable(BiomeType[] typesById, Map<BiomeType, Integer> idByType) {
+        this.typesById = typesById;
+        this.idByType = idByType;
+    }
+
+    /**
+     * Gets the {@link BiomeType} for the given biome id.
+     *
+     * @param id The biome id
+     * @return The biome type, or {@code null} if not found
+     */
+    @Nullable
+    BiomeType getType(int id) {
+        if (id >= 0 && id < BIOME_IDS) {
+            final BiomeType type = this.typesById[id];
+            if (type != null) {
+                return type;
+            }
+        }
+        return BiomeRegistryModule.get().getByInternalId(id).orElse(null);
+    }
+
+    /**
+     * Gets the biome id of the {@link BiomeType}.
+     *
+     * @param type The biome type
+     * @return The biome id
+     */
+    int getId(BiomeType type) {
+        final Integer id = this.idByType.get(type);
+        if (id != null) {
+            return id;
+        }
+        return BiomeRegistryModule.get().getInternalId(type);
+    }
+}
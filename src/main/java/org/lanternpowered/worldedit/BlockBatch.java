@@ -0,0 +1,288 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.jnbt.CompoundTag;
+import org.spongepowered.api.block.BlockState;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * A collection of pending block changes, grouped by
+ * chunk and by the 16x16x16 section within that chunk.
+ */
+final class BlockBatch {
+
+    static final int SECTION_COUNT = 16;
+    static final int SECTION_VOLUME = 16 * 16 * 16;
+
+    private final Map<Long, ChunkEntry> chunks = new LinkedHashMap<>();
+
+    // Most edits touch the same chunk many times in a row
+    @Nullable private ChunkEntry lastEntry;
+
+    private int size;
+
+    static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xffffffffL);
+    }
+
+    /**
+     * Gets the index of the position within its section.
+     */
+    static int index(int x, int y, int z) {
+        return (y & 0xf) << 8 | (z & 0xf) << 4 | (x & 0xf);
+    }
+
+    /**
+     * Gets the index of the position within its chunk.
+     */
+    static int chunkIndex(int x, int y, int z) {
+        return y << 8 | (z & 0xf) << 4 | (x & 0xf);
+    }
+
+    /**
+     * Queues the block state and the optional tile data at the given position.
+     *
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @param z The z coordinate
+     * @param state The block state
+     * @param tileData The tile entity data, if present
+     * @return Whether the change was queued
+     */
+    boolean set(int x, int y, int z, BlockState state, @Nullable CompoundTag tileData) {
+        if (y < 0 || y >= SECTION_COUNT << 4) {
+            return false;
+        }
+        final ChunkEntry entry = getOrCreateEntry(x >> 4, z >> 4);
+        if (entry.set(x, y, z, state, tileData)) {
+            this.size++;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the pending block state at the given position.
+     *
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @param z The z coordinate
+     * @return The block state, or {@code null} if there isn't a pending change
+     */
+    @Nullable
+    BlockState get(int x, int y, int z) {
+        if (y < 0 || y >= SECTION_COUNT << 4) {
+            return null;
+        }
+        final ChunkEntry entry = getEntry(x >> 4, z >> 4);
+        return entry == null ? null : entry.get(x, y, z);
+    }
+
+    /**
+     * Gets the pending tile data at the given position.
+     *
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @param z The z coordinate
+     * @return The tile data, or {@code null} if there isn't any
+     */
+    @Nullable
+    CompoundTag getTileData(int x, int y, int z) {
+        final ChunkEntry entry = getEntry(x >> 4, z >> 4);
+        return entry == null ? null : entry.tileData.get(chunkIndex(x, y, z));
+    }
+
+    /**
+     * Gets whether there is a pending change at the given position. Unlike
+     * {@link #get(int, int, int)}, this doesn't modify the state of the
+     * batch, so it can be called from any thread.
+     *
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @param z The z coordinate
+     * @return Whether there is a pending change
+     */
+    boolean contains(int x, int y, int z) {
+        if (y < 0 || y >= SECTION_COUNT << 4) {
+            return false;
+        }
+        final ChunkEntry entry = this.chunks.get(key(x >> 4, z >> 4));
+        return entry != null && entry.get(x, y, z) != null;
+    }
+
+    /**
+     * Gets whether there are pending changes within the given chunk. This
+     * doesn't modify the state of the batch, so it can be called from any thread.
+     *
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @return Whether there are pending changes
+     */
+    boolean hasChunk(int chunkX, int chunkZ) {
+        return this.chunks.containsKey(key(chunkX, chunkZ));
+    }
+
+    /**
+     * Gets the pending changes within the given chunk. This doesn't
+     * modify the state of the batch, so it can be called from any thread.
+     *
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @return The chunk entry, or {@code null} if there are no pending changes
+     */
+    @Nullable
+    ChunkEntry getChunk(int chunkX, int chunkZ) {
+        return this.chunks.get(key(chunkX, chunkZ));
+    }
+
+    /**
+     * Gets whether the pending change at the given position is on the
+     * boundary of this batch, which means that at least one of the
+     * neighbor blocks isn't changed.
+     *
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @param z The z coordinate
+     * @return Whether the position is on the boundary
+     */
+    boolean isBoundary(int x, int y, int z) {
+        return !contains(x - 1, y, z) || !contains(x + 1, y, z) ||
+                (y > 0 && !contains(x, y - 1, z)) || (y < (SECTION_COUNT << 4) - 1 && !contains(x, y + 1, z)) ||
+                !contains(x, y, z - 1) || !contains(x, y, z + 1);
+    }
+
+    @Nullable
+    private ChunkEntry getEntry(int chunkX, int chunkZ) {
+        ChunkEntry entry = this.lastEntry;
+        if (entry != null && entry.x == chunkX && entry.z == chunkZ) {
+            return entry;
+        }
+        entry = this.chunks.get(key(chunkX, chunkZ));
+        if (entry != null) {
+            this.lastEntry = entry;
+        }
+        return entry;
+    }
+
+    private ChunkEntry getOrCreateEntry(int chunkX, int chunkZ) {
+        ChunkEntry entry = getEntry(chunkX, chunkZ);
+        if (entry == null) {
+            entry = new ChunkEntry(chunkX, chunkZ);
+            this.chunks.put(key(chunkX, chunkZ), entry);
+            this.lastEntry = entry;
+        }
+        return entry;
+    }
+
+    /**
+     * Gets all the chunks that have pending changes.
+     *
+     * @return The chunk entries
+     */
+    Collection<ChunkEntry> getChunks() {
+        return this.chunks.values();
+    }
+
+    /**
+     * Gets the amount of pending block changes.
+     *
+     * @return The size
+     */
+    int size() {
+        return this.size;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    void clear() {
+        this.chunks.clear();
+        this.lastEntry = null;
+        this.size = 0;
+    }
+
+    static final class ChunkEntry {
+
+        final int x;
+        final int z;
+
+        final BlockState[][] sections = new BlockState[SECTION_COUNT][];
+
+        /**
+         * The pending tile data, the key is the index
+         * of the block within the chunk (y << 8 | z << 4 | x).
+         */
+        final Map<Integer, CompoundTag> tileData = new HashMap<>();
+
+        private int size;
+
+        ChunkEntry(int x, int z) {
+            this.x = x;
+            this.z = z;
+        }
+
+        boolean set(int x, int y, int z, BlockState state, @Nullable CompoundTag tileData) {
+            BlockState[] section = this.sections[y >> 4];
+            if (section == null) {
+                section = this.sections[y >> 4] = new BlockState[SECTION_VOLUME];
+            }
+            final int index = index(x, y, z);
+            final boolean added = section[index] == null;
+            section[index] = state;
+            final int key = chunkIndex(x, y, z);
+            if (tileData != null) {
+                this.tileData.put(key, tileData);
+            } else if (!this.tileData.isEmpty()) {
+                this.tileData.remove(key);
+            }
+            if (added) {
+                this.size++;
+            }
+            return added;
+        }
+
+        @Nullable
+        BlockState get(int x, int y, int z) {
+            final BlockState[] section = this.sections[y >> 4];
+            return section == null ? null : section[index(x, y, z)];
+        }
+
+        /**
+         * Gets the amount of pending block changes within this chunk.
+         *
+         * @return The size
+         */
+        int size() {
+            return this.size;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import org.lanternpowered.server.game.registry.type.block.BlockRegistryModule;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.block.BlockType;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * A precomputed translation table between the legacy block
+ * id and data values and the {@link BlockState}s.
+ */
+final class BlockStateTable {
+
+    /**
+     * The range of the block ids that are stored in the table, the
+     * states outside this range are looked up in the registry.
+     */
+    static final int BLOCK_IDS = 1 << 12;
+    static final int BLOCK_IDS_AND_DATA = BLOCK_IDS << 4;
+
+    @Nullable private static volatile BlockStateTable instance;
+
+    /**
+     * Gets the current {@link BlockStateTable}, the
+     * table will be build if it isn't present.
+     *
+     * @return The block state table
+     */
+    static BlockStateTable get() {
+        BlockStateTable table = instance;
+        if (table == null) {
+            synchronized (BlockStateTable.class) {
+                table = instance;
+                if (table == null) {
+                    instance = table = build();
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Invalidates the current {@link BlockStateTable}, it will be
+     * rebuild the next time that it's requested. This should be
+     * called when the contents of the block registry change.
+     */
+    static void invalidate() {
+        instance = null;
+    }
+
+    private static BlockStateTable build() {
+        final BlockRegistryModule registry = BlockRegistryModule.get();
+        final BlockState[] statesByIdAndData = new BlockState[BLOCK_IDS_AND_DATA];
+        final BlockType[] typesById = new BlockType[BLOCK_IDS];
+        final Map<BlockState, Integer> idAndDataByState = new IdentityHashMap<>();
+        final Map<BlockType, Integer> idByType = new IdentityHashMap<>();
+        for (int id = 0; id < BLOCK_IDS; id++) {
+            final BlockState defaultState = registry.getStateByInternalId(id).orElse(null);
+            if (defaultState != null) {
+                final BlockType blockType = defaultState.getType();
+                typesById[id] = blockType;
+                idByType.computeIfAbsent(blockType, type -> registry.getStateInternalId(type.getDefaultState()));
+            }
+            for (int data = 0; data < 16; data++) {
+                final BlockState state = registry.getStateByInternalIdAndData(id, (byte) data).orElse(null);
+                if (state != null) {
+                    statesByIdAndData[id << 4 | data] = state;
+                    idAndDataByState.computeIfAbsent(state, registry::getStateInternalIdAndData);
+                }
+            }
+        }
+        return new BlockStateTable(statesByIdAndData, typesById, idAndDataByState, idByType);
+    }
+
+    private final BlockState[] statesByIdAndData;
+    private final BlockType[] typesById;
+    private final Map<BlockState, Integer> idAndDataByState;
+    private final Map<BlockType, Integer> idByType;
+
+    BlockStateTable(BlockState[] statesByIdAndData, BlockType[] typesById,
+            Map<BlockState, Integer> idAndDataByState, Map<BlockType, Integer> idByType) {
+        this.statesByIdAndData = statesByIdAndData;
+        this.typesById = typesById;
+        this.idAndDataByState = idAndDataByState;
+        this.idByType = idByType;
+    }
+
+    /**
+     * Gets the {@link BlockState} for the given block id and data value.
+     *
+     * @param id The block id
+     * @param data The data value
+     * @return The block state, or {@code null} if not found
+     */
+    @Nullable
+    BlockState getState(int id, int data) {
+        if (id >= 0 && id < BLOCK_IDS && data >= 0 && data < 16) {
+            final BlockState state = this.statesByIdAndData[id << 4 | data];
+            if (state != null) {
+                return state;
+            }
+        }
+        return BlockRegistryModule.get().getStateByInternalIdAndData(id, (byte) data).orElse(null);
+    }
+
+    /**
+     * Gets the combined block id and data value of the
+     * {@link BlockState}, formatted as {@code id << 4 | data}.
+     *
+     * @param state The block state
+     * @return The block id and data value
+     */
+    int getIdAndData(BlockState state) {
+        final Integer idAndData = this.idAndDataByState.get(state);
+        if (idAndData != null) {
+            return idAndData;
+        }
+        return BlockRegistryModule.get().getStateInternalIdAndData(state);
+    }
+
+    /**
+     * Gets the {@link BlockType} for the given block id.
+     *
+     * @param id The block id
+     * @return The block type, or {@code null} if not found
+     */
+    @Nullable
+    BlockType getType(int id) {
+        if (id >= 0 && id < BLOCK_IDS) {
+            final BlockType type = this.typesById[id];
+            if (type != null) {
+                return type;
+            }
+        }
+        return BlockRegistryModule.get().getStateByInternalId(id).map(BlockState::getType).orElse(null);
+    }
+
+    /**
+     * Gets the block id of the {@link BlockType}.
+     *
+     * @param type The block type
+     * @return The block id
+     */
+    int getId(BlockType type) {
+        final Integer id = this.idByType.get(type);
+        if (id != null) {
+            return id;
+        }
+        return BlockRegistryModule.get().getStateInternalId(type.getDefaultState());
+    }
+}
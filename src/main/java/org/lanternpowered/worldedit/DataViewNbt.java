@@ -43,84 +43,241 @@
 import org.spongepowered.api.data.DataView;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.function.Function;
 
 import javax.annotation.Nullable;
 
 final class DataViewNbt {
 
+    /**
+     * The converters that should be used to convert objects into tags, the
+     * converter is only resolved once for every class.
+     */
+    private static final ClassValue<Function<Object, Tag>> TO_CONVERTERS = new ClassValue<Function<Object, Tag>>() {
+        @Override
+        protected Function<Object, Tag> computeValue(Class<?> type) {
+            if (type == Byte.class) {
+                return object -> new ByteTag((Byte) object);
+            } else if (type == Short.class) {
+                return object -> new ShortTag((Short) object);
+            } else if (type == Integer.class) {
+                return object -> new IntTag((Integer) object);
+            } else if (type == Long.class) {
+                return object -> new LongTag((Long) object);
+            } else if (type == Double.class) {
+                return object -> new DoubleTag((Double) object);
+            } else if (type == Float.class) {
+                return object -> new FloatTag((Float) object);
+            } else if (type == String.class) {
+                return object -> new StringTag((String) object);
+            } else if (type == int[].class) {
+                return object -> new IntArrayTag((int[]) object);
+            } else if (type == byte[].class) {
+                return object -> new ByteArrayTag((byte[]) object);
+            } else if (DataView.class.isAssignableFrom(type)) {
+                return object -> toCompound((DataView) object);
+            } else if (DataSerializable.class.isAssignableFrom(type)) {
+                return object -> toCompound(((DataSerializable) object).toContainer());
+            } else if (Map.class.isAssignableFrom(type)) {
+                return object -> toCompound((Map<?, ?>) object);
+            } else if (List.class.isAssignableFrom(type)) {
+                return object -> toList((List<?>) object);
+            }
+            return object -> {
+                throw new IllegalArgumentException("Unsupported object type: " + object);
+            };
+        }
+    };
+
+    /**
+     * The converters that should be used to convert tags into objects.
+     */
+    private static final ClassValue<Function<Tag, Object>> FROM_CONVERTERS = new ClassValue<Function<Tag, Object>>() {
+        @Override
+        protected Function<Tag, Object> computeValue(Class<?> type) {
+            if (CompoundTag.class.isAssignableFrom(type)) {
+                return tag -> {
+                    final DataView view = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+                    from((CompoundTag) tag, view);
+                    return view;
+                };
+            } else if (ListTag.class.isAssignableFrom(type)) {
+                return tag -> fromList((ListTag) tag);
+            }
+            return Tag::getValue;
+        }
+    };
+
     static CompoundTag to(DataView dataView) {
-        return (CompoundTag) to0(dataView);
+        return toCompound(dataView);
+    }
+
+    /**
+     * Creates a {@link LazyTag} that holds the given {@link DataView}, the data
+     * view will only be converted once the tag is requested. The data view
+     * shouldn't be modified after this is called.
+     *
+     * @param dataView The data view
+     * @return The lazy tag
+     */
+    static LazyTag toLazy(DataView dataView) {
+        return new LazyTag(dataView);
     }
 
     private static Tag to0(Object object) {
-        if (object instanceof Byte) {
-            return new ByteTag((Byte) object);
-        } else if (object instanceof Short) {
-            return new ShortTag((Short) object);
-        } else if (object instanceof Integer) {
-            return new IntTag((Integer) object);
-        } else if (object instanceof Long) {
-            return new LongTag((Long) object);
-        } else if (object instanceof Double) {
-            return new DoubleTag((Double) object);
-        } else if (object instanceof Float) {
-            return new FloatTag((Float) object);
-        } else if (object instanceof String) {
-            return new StringTag((String) object);
-        } else if (object instanceof int[]) {
-            return new IntArrayTag((int[]) object);
-        } else if (object instanceof byte[]) {
-            return new ByteArrayTag((byte[]) object);
-        } else if (object instanceof DataView || object instanceof DataSerializable) {
-            final DataView view = object instanceof DataSerializable ? ((DataSerializable) object).toContainer() : (DataView) object;
-            final Map<String, Tag> result = new HashMap<>();
-            for (Map.Entry<DataQuery, Object> entry : view.getValues(false).entrySet()) {
-                result.put(entry.getKey().asString('.'), to0(entry.getValue()));
-            }
-            return new CompoundTag(result);
-        } else if (object instanceof Map) {
-            final Map<String, Tag> result = new HashMap<>();
-            //noinspection unchecked
-            for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) object).entrySet()) {
-                result.put(entry.getKey().toString(), to0(entry.getValue()));
+        return TO_CONVERTERS.get(object.getClass()).apply(object);
+    }
+
+    private static CompoundTag toCompound(DataView view) {
+        final Map<DataQuery, Object> values = view.getValues(false);
+        final Map<String, Tag> result = new HashMap<>(capacity(values.size()));
+        for (Map.Entry<DataQuery, Object> entry : values.entrySet()) {
+            result.put(toKey(entry.getKey()), to0(entry.getValue()));
+        }
+        return new CompoundTag(result);
+    }
+
+    private static CompoundTag toCompound(Map<?, ?> map) {
+        final Map<String, Tag> result = new HashMap<>(capacity(map.size()));
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            result.put(entry.getKey().toString(), to0(entry.getValue()));
+        }
+        return new CompoundTag(result);
+    }
+
+    private static ListTag toList(List<?> list) {
+        final int size = list.size();
+        if (size == 0) {
+            return new ListTag(EndTag.class, Collections.emptyList());
+        }
+        final List<Tag> result = new ArrayList<>(size);
+        for (Object value : list) {
+            result.add(to0(value));
+        }
+        return new ListTag(result.get(0).getClass(), result);
+    }
+
+    private static String toKey(DataQuery query) {
+        // The queries of shallow values only have one part,
+        // so there is no need to build a new string
+        final List<String> parts = query.getParts();
+        return parts.size() == 1 ? parts.get(0) : query.asString('.');
+    }
+
+    private static int capacity(int size) {
+        // Avoid rehashing the map while it's being filled
+        return size < 3 ? size + 1 : (int) (size / 0.75f + 1f);
+    }
+
+    static DataView from(CompoundTag tag) {
+        final DataView view = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+        from(tag, view);
+        return view;
+    }
+
+    /**
+     * Converts the {@link CompoundTag} into a {@link DataView}, the excluded top
+     * level keys are skipped during the conversion.
+     *
+     * @param tag The compound tag
+     * @param excludedKeys The top level keys that should be skipped
+     * @return The data view
+     */
+    static DataView from(CompoundTag tag, Set<String> excludedKeys) {
+        final DataView view = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+        from(tag, view, excludedKeys);
+        return view;
+    }
+
+    private static void from(CompoundTag tag, DataView view) {
+        from(tag, view, Collections.emptySet());
+    }
+
+    private static void from(CompoundTag tag, DataView view, Set<String> excludedKeys) {
+        for (Map.Entry<String, Tag> entry : tag.getValue().entrySet()) {
+            if (excludedKeys.contains(entry.getKey())) {
+                continue;
             }
-            return new CompoundTag(result);
-        } else if (object instanceof List) {
-            final List<Tag> result = new ArrayList<>();
-            for (Object value : ((List) object)) {
-                result.add(to0(value));
+            final Tag value = entry.getValue();
+            final DataQuery query = DataQuery.of(entry.getKey());
+            if (value instanceof CompoundTag) {
+                from((CompoundTag) value, view.createView(query));
+            } else {
+                view.set(query, from0(value));
             }
-            return new ListTag(result.isEmpty() ? EndTag.class : result.get(0).getClass(), result);
         }
-        throw new IllegalArgumentException("Unsupported object type: " + object);
     }
 
-    static DataView from(CompoundTag tag) {
-        return (DataView) from(tag, null);
+    private static Object from0(Tag tag) {
+        return FROM_CONVERTERS.get(tag.getClass()).apply(tag);
     }
 
-    private static Object from(Tag tag, @Nullable DataView view) {
-        if (tag instanceof CompoundTag) {
-            final Map<String, Tag> map = ((CompoundTag) tag).getValue();
-            if (view == null) {
-                view = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+    private static List<Object> fromList(ListTag tag) {
+        final List<Tag> tags = tag.getValue();
+        final List<Object> result = new ArrayList<>(tags.size());
+        for (Tag entry : tags) {
+            result.add(from0(entry));
+        }
+        return result;
+    }
+
+    /**
+     * Holds a {@link DataView} that is only converted into a {@link CompoundTag}
+     * once the tag is requested. The data view can also be copied directly,
+     * without converting it to nbt and back.
+     */
+    static final class LazyTag {
+
+        private final DataView dataView;
+        @Nullable private volatile CompoundTag tag;
+
+        private LazyTag(DataView dataView) {
+            this.dataView = dataView;
+        }
+
+        /**
+         * Gets the {@link CompoundTag}, the data view is
+         * converted the first time this is called.
+         *
+         * @return The compound tag
+         */
+        CompoundTag get() {
+            CompoundTag tag = this.tag;
+            if (tag == null) {
+                synchronized (this) {
+                    tag = this.tag;
+                    if (tag == null) {
+                        final long start = EditMetrics.start();
+                        this.tag = tag = toCompound(this.dataView);
+                        EditMetrics.GLOBAL.record(EditPhase.NBT_CONVERSION, start, tag.getValue().size());
+                    }
+                }
             }
-            for (Map.Entry<String, Tag> entry : map.entrySet()) {
-                if (entry.getValue() instanceof CompoundTag) {
-                    from(tag, view.createView(DataQuery.of(entry.getKey())));
-                } else {
-                    view.set(DataQuery.of(entry.getKey()), from(entry.getValue(), null));
+            return tag;
+        }
+
+        /**
+         * Copies the backing {@link DataView}, the excluded
+         * top level keys are skipped.
+         *
+         * @param excludedKeys The top level keys that should be skipped
+         * @return The data view
+         */
+        DataView copy(Set<String> excludedKeys) {
+            // The values are cloned, the backing data view may be used again
+            final DataView view = DataContainer.createNew(DataView.SafetyMode.CLONED_ON_SET);
+            for (Map.Entry<DataQuery, Object> entry : this.dataView.getValues(false).entrySet()) {
+                if (!excludedKeys.contains(toKey(entry.getKey()))) {
+                    view.set(entry.getKey(), entry.getValue());
                 }
             }
             return view;
-        } else if (tag instanceof ListTag) {
-            return ((ListTag) tag).getValue().stream().map(entry -> from(entry, null)).collect(Collectors.toList());
         }
-        return tag.getValue();
     }
 
     private DataViewNbt() {
@@ -0,0 +1,280 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Lock-free counters and latency histograms for every {@link EditPhase}. The
+ * metrics are disabled by default, {@link #start()} returns {@code 0} in that
+ * case and recording is skipped entirely. Recorded values are also added
+ * to the parent metrics, if present.
+ */
+final class EditMetrics implements EditMetricsMXBean {
+
+    private static volatile boolean enabled = Boolean.getBoolean("lanternworldedit.metrics");
+
+    private static final ConcurrentMap<ObjectName, EditMetrics> registered = new ConcurrentHashMap<>();
+
+    /**
+     * The metrics of all the worlds combined.
+     */
+    static final EditMetrics GLOBAL = new EditMetrics("global", null);
+
+    /**
+     * Gets the start time of a measurement.
+     *
+     * @return The start time, or {@code 0} if the metrics are disabled
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    static boolean isMetricsEnabled() {
+        return enabled;
+    }
+
+    static void setMetricsEnabled(boolean enabled) {
+        EditMetrics.enabled = enabled;
+    }
+
+    /**
+     * Gets all the metrics that are registered to the MBean server.
+     *
+     * @return The registered metrics
+     */
+    static Collection<EditMetrics> getRegistered() {
+        return Collections.unmodifiableCollection(registered.values());
+    }
+
+    /**
+     * The metrics of the edits that are started while the metrics are
+     * disabled, nothing is recorded to these metrics.
+     */
+    private static final EditMetrics DISABLED = new EditMetrics("disabled", null);
+
+    private final String name;
+    @Nullable private final EditMetrics parent;
+
+    // Allocated once the first measurement is recorded
+    @Nullable private volatile Phase[] phases;
+
+    @Nullable private volatile EditMetrics lastEdit;
+
+    EditMetrics(String name, @Nullable EditMetrics parent) {
+        this.name = name;
+        this.parent = parent;
+    }
+
+    /**
+     * Creates the metrics of a single edit, the values will be added to
+     * these metrics as well. While the metrics are disabled, a shared
+     * instance is returned that doesn't record anything.
+     *
+     * @return The edit metrics
+     */
+    EditMetrics createEditMetrics() {
+        if (!enabled) {
+            return DISABLED;
+        }
+        final EditMetrics metrics = new EditMetrics(this.name + "-edit", this);
+        this.lastEdit = metrics;
+        return metrics;
+    }
+
+    /**
+     * Records a measurement of the given phase.
+     *
+     * @param phase The phase
+     * @param start The start time, see {@link #start()}
+     * @param entries The amount of processed entries
+     */
+    void record(EditPhase phase, long start, long entries) {
+        if (start == 0L || this == DISABLED) {
+            return;
+        }
+        final long duration = System.nanoTime() - start;
+        final int index = phase.ordinal();
+        EditMetrics metrics = this;
+        while (metrics != null) {
+            metrics.getOrCreatePhases()[index].record(duration, entries);
+            metrics = metrics.parent;
+        }
+    }
+
+    private Phase[] getOrCreatePhases() {
+        Phase[] phases = this.phases;
+        if (phases == null) {
+            synchronized (this) {
+                phases = this.phases;
+                if (phases == null) {
+                    phases = new Phase[EditPhase.values().length];
+                    for (int i = 0; i < phases.length; i++) {
+                        phases[i] = new Phase();
+                    }
+                    this.phases = phases;
+                }
+            }
+        }
+        return phases;
+    }
+
+    /**
+     * Registers these metrics to the platform MBean server. The global metrics
+     * and the metrics of the worlds use different keys, so a world can't
+     * replace the global metrics.
+     */
+    void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName objectName = getObjectName();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            registered.put(objectName, this);
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register the edit metrics of " + this.name, e);
+        }
+    }
+
+    /**
+     * Unregisters these metrics from the platform MBean server, if
+     * they are still registered.
+     */
+    void unregister() {
+        final ObjectName objectName = getObjectName();
+        // Metrics that were replaced by a newer instance are already unregistered
+        if (!registered.remove(objectName, this)) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to unregister the edit metrics of " + this.name, e);
+        }
+    }
+
+    private ObjectName getObjectName() {
+        final String key = this.parent == null ? "scope=global" : "world=" + ObjectName.quote(this.name);
+        try {
+            return new ObjectName("org.lanternpowered.worldedit:type=EditMetrics," + key);
+        } catch (JMException e) {
+            throw new IllegalStateException("Invalid object name for the edit metrics of " + this.name, e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        setMetricsEnabled(enabled);
+    }
+
+    @Override
+    public List<PhaseMetrics> getPhases() {
+        final Phase[] phases = this.phases;
+        final List<PhaseMetrics> metrics = new ArrayList<>();
+        for (EditPhase phase : EditPhase.values()) {
+            if (phases == null) {
+                metrics.add(new PhaseMetrics(phase.getId(), 0, 0, 0, 0, 0, 0));
+            } else {
+                metrics.add(phases[phase.ordinal()].toMetrics(phase));
+            }
+        }
+        return metrics;
+    }
+
+    @Override
+    public List<PhaseMetrics> getLastEditPhases() {
+        final EditMetrics lastEdit = this.lastEdit;
+        return lastEdit == null ? Collections.emptyList() : lastEdit.getPhases();
+    }
+
+    @Override
+    public void reset() {
+        final Phase[] phases = this.phases;
+        if (phases != null) {
+            for (Phase phase : phases) {
+                phase.reset();
+            }
+        }
+        this.lastEdit = null;
+    }
+
+    /**
+     * The counters and the latency histogram of a single {@link EditPhase}.
+     */
+    private static final class Phase {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder entries = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        void record(long duration, long entries) {
+            this.count.increment();
+            this.entries.add(entries);
+            this.nanos.add(duration);
+            this.maxNanos.accumulate(duration);
+            this.histogram.record(duration);
+        }
+
+        PhaseMetrics toMetrics(EditPhase phase) {
+            return new PhaseMetrics(phase.getId(), this.count.sum(), this.entries.sum(), this.nanos.sum(),
+                    this.histogram.getValueAtPercentile(50), this.histogram.getValueAtPercentile(99), this.maxNanos.get());
+        }
+
+        void reset() {
+            this.count.reset();
+            this.entries.reset();
+            this.nanos.reset();
+            this.maxNanos.reset();
+            this.histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+/**
+ * The phases of a edit that are measured by the {@link EditMetrics}.
+ */
+enum EditPhase {
+    /**
+     * The conversion between legacy ids and block states.
+     */
+    BLOCK_CONVERSION    ("block-conversion"),
+    /**
+     * The serialization and deserialization of tile entity data.
+     */
+    TILE_DATA           ("tile-data"),
+    /**
+     * The serialization and deserialization of entity data.
+     */
+    ENTITY_DATA         ("entity-data"),
+    /**
+     * The conversion between data views and nbt tags.
+     */
+    NBT_CONVERSION      ("nbt-conversion"),
+    /**
+     * The block writes to the world.
+     */
+    WORLD_WRITE         ("world-write"),
+    /**
+     * The recording and replaying of the undo history.
+     */
+    HISTORY             ("history"),
+    ;
+
+    private final String id;
+
+    EditPhase(String id) {
+        this.id = id;
+    }
+
+    String getId() {
+        return this.id;
+    }
+}
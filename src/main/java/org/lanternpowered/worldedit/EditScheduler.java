@@ -0,0 +1,232 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.worldedit.extension.platform.Actor;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.scheduler.SpongeExecutorService;
+import org.spongepowered.api.scheduler.Task;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Applies large {@link BlockBatch}es over multiple ticks. The batches are
+ * prepared asynchronously and applied on the main thread within a limited
+ * amount of time per tick.
+ *
+ * <p>The edits are applied in the order they were scheduled. Batches that
+ * change chunks of a edit that is still queued are queued as well, so they
+ * are never overwritten by the earlier edit.</p>
+ */
+final class EditScheduler {
+
+    /**
+     * The minimum amount of block changes before a batch is scheduled, a
+     * negative value disables the scheduler.
+     */
+    private static final int THRESHOLD = Integer.getInteger("lanternworldedit.scheduler.threshold", 100000);
+
+    /**
+     * The amount of milliseconds that may be spent per tick to apply the changes.
+     */
+    private static final long TICK_BUDGET = Long.getLong("lanternworldedit.scheduler.tick-budget", 10);
+
+    /**
+     * The interval between progress messages, in ticks.
+     */
+    private static final int PROGRESS_INTERVAL = 100;
+
+    private final Deque<ScheduledEdit> queue = new ArrayDeque<>();
+    private final long tickBudget = TimeUnit.MILLISECONDS.toNanos(TICK_BUDGET);
+
+    @Nullable private SpongeExecutorService asyncExecutor;
+    @Nullable private Task task;
+
+    /**
+     * Starts the scheduler.
+     *
+     * @param plugin The plugin instance
+     */
+    void start(Object plugin) {
+        this.asyncExecutor = Sponge.getScheduler().createAsyncExecutor(plugin);
+        this.task = Sponge.getScheduler().createTaskBuilder()
+                .name("LanternWorldEdit Edit Scheduler")
+                .intervalTicks(1)
+                .execute(this::tick)
+                .submit(plugin);
+    }
+
+    /**
+     * Stops the scheduler, all the remaining edits
+     * will be applied immediately.
+     */
+    void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+        this.asyncExecutor = null;
+        ScheduledEdit edit;
+        while ((edit = this.queue.poll()) != null) {
+            applyNow(edit);
+        }
+    }
+
+    /**
+     * Gets whether the given {@link BlockBatch} should be scheduled, this is
+     * the case for large batches and for batches that change chunks which
+     * are still changed by a scheduled edit of the world.
+     *
+     * @param world The world the batch will be applied to
+     * @param batch The block batch
+     * @return Whether the batch should be scheduled
+     */
+    boolean shouldSchedule(LanternWEWorld world, BlockBatch batch) {
+        if (this.task == null) {
+            return false;
+        }
+        return (THRESHOLD >= 0 && batch.size() >= THRESHOLD) || world.hasScheduledEdit(batch);
+    }
+
+    /**
+     * Schedules the {@link BlockBatch} to be applied to the world. The
+     * batch may no longer be modified after it's scheduled.
+     *
+     * @param world The world
+     * @param batch The block batch
+     * @param metrics The metrics to record the changes to
+     * @param fast Whether fast mode should be used, see {@link LanternWEWorld#applyBatch(BlockBatch, EditMetrics, boolean)}
+     * @param actor The actor that performed the edit
+     * @param completion The task to run once all the blocks are applied
+     */
+    void schedule(LanternWEWorld world, BlockBatch batch, EditMetrics metrics, boolean fast,
+            @Nullable Actor actor, Runnable completion) {
+        final ScheduledEdit edit = new ScheduledEdit(world, batch, metrics, fast, actor, completion);
+        world.addScheduledEdit(edit);
+        this.queue.add(edit);
+        final SpongeExecutorService asyncExecutor = this.asyncExecutor;
+        if (asyncExecutor == null) {
+            edit.prepare();
+        } else {
+            edit.prepareAsync(asyncExecutor);
+        }
+        if (actor != null && batch.size() >= THRESHOLD) {
+            actor.print("The edit of " + batch.size() + " blocks will be applied over the next ticks.");
+        }
+    }
+
+    /**
+     * Applies the queued edits immediately, up to and including the last edit
+     * that changes the given chunk of the world. This must be called before
+     * the chunk is changed directly, otherwise the queued edits would
+     * overwrite the change.
+     *
+     * @param world The world
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     */
+    void complete(LanternWEWorld world, int chunkX, int chunkZ) {
+        ScheduledEdit last = null;
+        for (ScheduledEdit edit : this.queue) {
+            if (edit.world == world && edit.batch.hasChunk(chunkX, chunkZ)) {
+                last = edit;
+            }
+        }
+        if (last == null) {
+            return;
+        }
+        // The earlier edits may change the same blocks, so they are applied first
+        ScheduledEdit edit;
+        do {
+            edit = this.queue.poll();
+            applyNow(edit);
+        } while (edit != last);
+    }
+
+    private void tick() {
+        final long deadline = System.nanoTime() + this.tickBudget;
+        ScheduledEdit edit;
+        // Edits are applied in order, so wait if the next one isn't prepared yet
+        while ((edit = this.queue.peek()) != null && edit.isPrepared()) {
+            try {
+                if (!edit.apply(deadline, true)) {
+                    if (edit.actor != null && edit.getTicks() % PROGRESS_INTERVAL == 0) {
+                        edit.actor.print("Applied " + (edit.getApplied() * 100L / edit.batch.size()) + "% of the edit.");
+                    }
+                    break;
+                }
+            } catch (RuntimeException e) {
+                this.queue.poll();
+                fail(edit, e);
+                continue;
+            }
+            this.queue.poll();
+            finish(edit);
+            if (System.nanoTime() - deadline >= 0) {
+                break;
+            }
+        }
+    }
+
+    private static void applyNow(ScheduledEdit edit) {
+        try {
+            // The edit may still be prepared asynchronously, preparing
+            // it again would race with that preparation
+            edit.awaitPrepared();
+            edit.apply(0L, false);
+        } catch (RuntimeException e) {
+            fail(edit, e);
+            return;
+        }
+        finish(edit);
+    }
+
+    private static void finish(ScheduledEdit edit) {
+        edit.world.removeScheduledEdit(edit);
+        if (edit.actor != null && edit.batch.size() >= THRESHOLD) {
+            edit.actor.print("Applied " + edit.getApplied() + " block changes in " + edit.getTicks() + " ticks.");
+        }
+        // The edit is no longer queued, so the completion can schedule new edits
+        edit.complete();
+    }
+
+    /**
+     * Drops the edit that couldn't be prepared or applied, the remaining
+     * block changes are discarded and the completion isn't run.
+     */
+    private static void fail(ScheduledEdit edit, RuntimeException exception) {
+        edit.world.removeScheduledEdit(edit);
+        LanternWorldEdit.get().getLogger().error("Failed to apply a scheduled edit of {} blocks in {}, {} blocks were applied.",
+                edit.batch.size(), edit.world.getName(), edit.getApplied(), exception);
+        if (edit.actor != null) {
+            edit.actor.printError("The edit failed after " + edit.getApplied() + " of " + edit.batch.size() +
+                    " block changes: " + exception.getMessage());
+        }
+    }
+}
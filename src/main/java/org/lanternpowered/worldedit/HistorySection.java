@@ -0,0 +1,262 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.worldedit.WorldEditException;
+import org.spongepowered.api.block.BlockState;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * The recorded changes of a 16x16x16 chunk section. The states before
+ * and after the changes are stored as indexes into a shared palette,
+ * packed into long arrays. The palette index {@code 0} means that the
+ * block isn't changed.
+ *
+ * <p>The packed arrays can be spilled to a {@link ByteBuffer}, which
+ * can be backed by a memory-mapped file.</p>
+ */
+final class HistorySection {
+
+    private static final int VOLUME = BlockBatch.SECTION_VOLUME;
+
+    final int x;
+    final int y;
+    final int z;
+
+    private final List<BlockState> palette = new ArrayList<>();
+    @Nullable private Map<BlockState, Integer> paletteIndex;
+
+    private int bits = 1;
+    @Nullable private long[] before;
+    @Nullable private long[] after;
+
+    // The packed arrays, when they are spilled
+    @Nullable private ByteBuffer spilled;
+
+    // The serialized tile data, the key is the index within the section
+    private final Map<Integer, byte[]> beforeTiles = new HashMap<>();
+    private final Map<Integer, byte[]> afterTiles = new HashMap<>();
+
+    HistorySection(int x, int y, int z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.palette.add(null);
+        this.before = new long[length(this.bits)];
+        this.after = new long[length(this.bits)];
+    }
+
+    private static int length(int bits) {
+        final int perLong = 64 / bits;
+        return (VOLUME + perLong - 1) / perLong;
+    }
+
+    private static int get(long[] data, int bits, int index) {
+        final int perLong = 64 / bits;
+        return (int) ((data[index / perLong] >>> ((index % perLong) * bits)) & ((1L << bits) - 1));
+    }
+
+    private static void set(long[] data, int bits, int index, int value) {
+        final int perLong = 64 / bits;
+        final int shift = (index % perLong) * bits;
+        final int i = index / perLong;
+        data[i] = (data[i] & ~(((1L << bits) - 1) << shift)) | ((long) value << shift);
+    }
+
+    private static long[] resize(long[] data, int bits, int newBits) {
+        final long[] newData = new long[length(newBits)];
+        for (int i = 0; i < VOLUME; i++) {
+            set(newData, newBits, i, get(data, bits, i));
+        }
+        return newData;
+    }
+
+    /**
+     * Gets whether the state before the change is
+     * already recorded at the given index.
+     *
+     * @param index The index within the section
+     * @return Whether the state is recorded
+     */
+    boolean hasBefore(int index) {
+        load();
+        return get(this.before, this.bits, index) != 0;
+    }
+
+    void setBefore(int index, BlockState state, @Nullable byte[] tileData) {
+        load();
+        set(this.before, this.bits, index, getPaletteId(state));
+        if (tileData != null) {
+            this.beforeTiles.put(index, tileData);
+        }
+    }
+
+    void setAfter(int index, BlockState state, @Nullable byte[] tileData) {
+        load();
+        set(this.after, this.bits, index, getPaletteId(state));
+        if (tileData != null) {
+            this.afterTiles.put(index, tileData);
+        } else if (!this.afterTiles.isEmpty()) {
+            this.afterTiles.remove(index);
+        }
+    }
+
+    private int getPaletteId(BlockState state) {
+        Map<BlockState, Integer> paletteIndex = this.paletteIndex;
+        if (paletteIndex == null) {
+            paletteIndex = this.paletteIndex = new IdentityHashMap<>();
+            for (int i = 1; i < this.palette.size(); i++) {
+                paletteIndex.put(this.palette.get(i), i);
+            }
+        }
+        Integer id = paletteIndex.get(state);
+        if (id == null) {
+            id = this.palette.size();
+            this.palette.add(state);
+            paletteIndex.put(state, id);
+            if (id >= 1 << this.bits) {
+                this.before = resize(this.before, this.bits, this.bits + 1);
+                this.after = resize(this.after, this.bits, this.bits + 1);
+                this.bits++;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Gets the amount of bytes that the packed arrays use.
+     *
+     * @return The size in bytes
+     */
+    int getPackedSize() {
+        return length(this.bits) * 2 * Long.BYTES;
+    }
+
+    boolean isSpilled() {
+        return this.spilled != null;
+    }
+
+    /**
+     * Writes the packed arrays to the {@link ByteBuffer}, starting at its
+     * current position. The heap copies are released afterwards.
+     *
+     * @param buffer The buffer
+     */
+    void spill(ByteBuffer buffer) {
+        final long[] before = this.before;
+        final long[] after = this.after;
+        if (before == null || after == null) {
+            return;
+        }
+        final ByteBuffer slice = buffer.slice();
+        for (long value : before) {
+            buffer.putLong(value);
+        }
+        for (long value : after) {
+            buffer.putLong(value);
+        }
+        slice.limit(getPackedSize());
+        this.spilled = slice;
+        this.before = null;
+        this.after = null;
+        this.paletteIndex = null;
+    }
+
+    /**
+     * Moves the packed arrays back to the heap, if they are spilled.
+     */
+    private void load() {
+        final ByteBuffer spilled = this.spilled;
+        if (spilled == null) {
+            return;
+        }
+        this.before = read(spilled, 0);
+        this.after = read(spilled, 1);
+        this.spilled = null;
+    }
+
+    private long[] read(ByteBuffer buffer, int offset) {
+        final int length = length(this.bits);
+        final long[] data = new long[length];
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset * length * Long.BYTES);
+        duplicate.asLongBuffer().get(data);
+        return data;
+    }
+
+    /**
+     * Writes the states before or after the changes of this section.
+     *
+     * @param writer The writer
+     * @param undo Whether the states before the changes should be written
+     * @return The amount of written blocks
+     * @throws WorldEditException If the writer failed
+     */
+    int apply(BlockWriter writer, boolean undo) throws WorldEditException {
+        long[] data = undo ? this.before : this.after;
+        if (data == null) {
+            // Don't move the arrays back to the heap, only read them
+            data = read(this.spilled, undo ? 0 : 1);
+        }
+        final Map<Integer, byte[]> tiles = undo ? this.beforeTiles : this.afterTiles;
+        final int bits = this.bits;
+        final int perLong = 64 / bits;
+        final long mask = (1L << bits) - 1;
+        final int baseX = this.x << 4;
+        final int baseY = this.y << 4;
+        final int baseZ = this.z << 4;
+        int count = 0;
+        for (int i = 0; i < data.length; i++) {
+            long value = data[i];
+            // Skip the blocks that aren't changed
+            for (int index = i * perLong; value != 0L; index++) {
+                final int id = (int) (value & mask);
+                value >>>= bits;
+                if (id == 0) {
+                    continue;
+                }
+                final byte[] tileData = tiles.isEmpty() ? null : tiles.get(index);
+                writer.set(baseX | (index & 0xf), baseY | (index >> 8), baseZ | ((index >> 4) & 0xf),
+                        this.palette.get(id), tileData == null ? null : PackedHistory.readTag(tileData));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    interface BlockWriter {
+
+        void set(int x, int y, int z, BlockState state, @Nullable CompoundTag tileData) throws WorldEditException;
+    }
+}
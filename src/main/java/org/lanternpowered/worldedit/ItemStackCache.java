@@ -0,0 +1,205 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sk89q.worldedit.blocks.BaseItemStack;
+import org.lanternpowered.server.data.io.store.ObjectStore;
+import org.lanternpowered.server.game.registry.type.item.EnchantmentRegistryModule;
+import org.lanternpowered.server.game.registry.type.item.ItemRegistryModule;
+import org.lanternpowered.server.inventory.LanternItemStack;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.DataQuery;
+import org.spongepowered.api.data.DataView;
+import org.spongepowered.api.data.key.Keys;
+import org.spongepowered.api.data.meta.ItemEnchantment;
+import org.spongepowered.api.item.Enchantment;
+import org.spongepowered.api.item.ItemType;
+import org.spongepowered.api.item.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * A bounded cache of prototype {@link ItemStack}s, keyed by the item type, the
+ * data value and the enchantments of a {@link BaseItemStack}. The prototypes
+ * are never exposed, only copies of them.
+ */
+final class ItemStackCache {
+
+    /**
+     * The maximum amount of prototype item stacks that will be cached.
+     */
+    private static final int MAXIMUM_SIZE = Integer.getInteger("lanternworldedit.item-cache.size", 1024);
+
+    private static final DataQuery DATA_VALUE = DataQuery.of("dataVal007");
+
+    private static final int ENCHANTMENT_IDS = 256;
+
+    @Nullable private static volatile ItemStackCache instance;
+
+    /**
+     * Gets the current {@link ItemStackCache}, the
+     * cache will be created if it isn't present.
+     *
+     * @return The item stack cache
+     */
+    static ItemStackCache get() {
+        ItemStackCache cache = instance;
+        if (cache == null) {
+            synchronized (ItemStackCache.class) {
+                cache = instance;
+                if (cache == null) {
+                    instance = cache = new ItemStackCache();
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Invalidates the current {@link ItemStackCache}, this
+     * should be called when the contents of the item or
+     * enchantment registries change.
+     */
+    static void invalidate() {
+        instance = null;
+    }
+
+    private final Cache<Key, ItemStack> prototypes = CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+    private final Enchantment[] enchantmentsById;
+
+    private ItemStackCache() {
+        this.enchantmentsById = getEnchantments();
+    }
+
+    private static Enchantment[] getEnchantments() {
+        final EnchantmentRegistryModule registry = EnchantmentRegistryModule.get();
+        final Enchantment[] enchantmentsById = new Enchantment[ENCHANTMENT_IDS];
+        for (int id = 0; id < ENCHANTMENT_IDS; id++) {
+            enchantmentsById[id] = registry.getByInternalId(id).orElse(null);
+        }
+        return enchantmentsById;
+    }
+
+    /**
+     * Creates a new {@link ItemStack} for the given {@link BaseItemStack}.
+     *
+     * @param baseItemStack The base item stack
+     * @return The item stack
+     */
+    ItemStack create(BaseItemStack baseItemStack) {
+        final Key key = new Key(baseItemStack);
+        ItemStack prototype = this.prototypes.getIfPresent(key);
+        if (prototype == null) {
+            prototype = createPrototype(key);
+            this.prototypes.put(key, prototype);
+        }
+        final ItemStack itemStack = prototype.copy();
+        itemStack.setQuantity(baseItemStack.getAmount());
+        return itemStack;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ItemStack createPrototype(Key key) {
+        final ItemType itemType = ItemRegistryModule.get().getTypeByInternalId(key.type)
+                .orElseThrow(() -> new IllegalStateException("Invalid item type: " + key.type));
+        final LanternItemStack itemStack = new LanternItemStack(itemType, 1);
+        final ObjectStore<LanternItemStack> store = ObjectStores.getStore(LanternItemStack.class);
+        if (store == null) {
+            throw new IllegalStateException("Unable to access the LanternItemStack store.");
+        }
+        final DataView view = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+        view.set(DATA_VALUE, key.data);
+        store.deserialize(itemStack, view);
+        if (key.enchantments.length > 0) {
+            final List<ItemEnchantment> enchantments = new ArrayList<>(key.enchantments.length / 2);
+            for (int i = 0; i < key.enchantments.length; i += 2) {
+                enchantments.add(new ItemEnchantment(getEnchantment(key.enchantments[i]), key.enchantments[i + 1]));
+            }
+            itemStack.offer(Keys.ITEM_ENCHANTMENTS, enchantments);
+        }
+        return itemStack;
+    }
+
+    private Enchantment getEnchantment(int id) {
+        if (id >= 0 && id < ENCHANTMENT_IDS) {
+            final Enchantment enchantment = this.enchantmentsById[id];
+            if (enchantment != null) {
+                return enchantment;
+            }
+        }
+        return EnchantmentRegistryModule.get().getByInternalId(id)
+                .orElseThrow(() -> new IllegalStateException("Invalid enchantment type: " + id));
+    }
+
+    private static final class Key {
+
+        private final int type;
+        private final short data;
+
+        // The enchantment ids and levels, sorted by id
+        private final int[] enchantments;
+
+        private final int hashCode;
+
+        private Key(BaseItemStack baseItemStack) {
+            this.type = baseItemStack.getType();
+            this.data = baseItemStack.getData();
+            final Map<Integer, Integer> enchantments = baseItemStack.getEnchantments();
+            final int[] ids = new int[enchantments.size()];
+            int i = 0;
+            for (Integer id : enchantments.keySet()) {
+                ids[i++] = id;
+            }
+            Arrays.sort(ids);
+            this.enchantments = new int[ids.length * 2];
+            for (i = 0; i < ids.length; i++) {
+                this.enchantments[i * 2] = ids[i];
+                this.enchantments[i * 2 + 1] = enchantments.get(ids[i]);
+            }
+            this.hashCode = 31 * (31 * this.type + this.data) + Arrays.hashCode(this.enchantments);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.type == other.type && this.data == other.data && Arrays.equals(this.enchantments, other.enchantments);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+}
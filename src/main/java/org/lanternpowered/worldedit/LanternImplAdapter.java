@@ -26,39 +26,39 @@
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.collect.MapMaker;
 import com.sk89q.worldedit.blocks.BaseItemStack;
 import com.sk89q.worldedit.entity.BaseEntity;
 import com.sk89q.worldedit.sponge.SpongeWorld;
 import com.sk89q.worldedit.sponge.adapter.SpongeImplAdapter;
 import org.lanternpowered.server.data.io.store.ObjectSerializer;
-import org.lanternpowered.server.data.io.store.ObjectSerializerRegistry;
-import org.lanternpowered.server.data.io.store.ObjectStore;
-import org.lanternpowered.server.data.io.store.ObjectStoreRegistry;
-import org.lanternpowered.server.game.registry.type.block.BlockRegistryModule;
-import org.lanternpowered.server.game.registry.type.item.EnchantmentRegistryModule;
 import org.lanternpowered.server.game.registry.type.item.ItemRegistryModule;
-import org.lanternpowered.server.game.registry.type.world.biome.BiomeRegistryModule;
-import org.lanternpowered.server.inventory.LanternItemStack;
-import org.spongepowered.api.block.BlockState;
 import org.spongepowered.api.block.BlockType;
-import org.spongepowered.api.data.DataContainer;
-import org.spongepowered.api.data.DataQuery;
 import org.spongepowered.api.data.DataView;
-import org.spongepowered.api.data.key.Keys;
-import org.spongepowered.api.data.meta.ItemEnchantment;
 import org.spongepowered.api.entity.Entity;
-import org.spongepowered.api.item.Enchantment;
 import org.spongepowered.api.item.ItemType;
 import org.spongepowered.api.item.inventory.ItemStack;
 import org.spongepowered.api.world.World;
 import org.spongepowered.api.world.biome.BiomeType;
 
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentMap;
 
 final class LanternImplAdapter implements SpongeImplAdapter {
 
-    private static DataQuery DATA_VALUE = DataQuery.of("dataVal007");
+    private static final ConcurrentMap<World, LanternWEWorld> worlds = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * Releases the wrapper of the given {@link World}, if
+     * present. This must be called when the world is unloaded.
+     *
+     * @param world The world
+     */
+    static void unloadWorld(World world) {
+        final LanternWEWorld weWorld = worlds.remove(world);
+        if (weWorld != null) {
+            weWorld.unload();
+        }
+    }
 
     @Override
     public int resolve(ItemType itemType) {
@@ -67,12 +67,12 @@ public int resolve(ItemType itemType) {
 
     @Override
     public int resolve(BlockType blockType) {
-        return BlockRegistryModule.get().getStateInternalId(blockType.getDefaultState());
+        return BlockStateTable.get().getId(blockType);
     }
 
     @Override
     public int resolve(BiomeType biomeType) {
-        return BiomeRegistryModule.get().getInternalId(biomeType);
+        return BiomeTable.get().getId(biomeType);
     }
 
     @Override
@@ -82,49 +82,50 @@ public ItemType resolveItem(int i) {
 
     @Override
     public BlockType resolveBlock(int i) {
-        return BlockRegistryModule.get().getStateByInternalId(i).map(BlockState::getType).orElse(null);
+        return BlockStateTable.get().getType(i);
     }
 
     @Override
     public BiomeType resolveBiome(int i) {
-        return BiomeRegistryModule.get().getByInternalId(i).orElse(null);
+        return BiomeTable.get().getType(i);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public BaseEntity createBaseEntity(Entity entity) {
         checkNotNull(entity, "entity");
-        final ObjectSerializer serializer = ObjectSerializerRegistry.get().get(entity.getClass())
-                .orElseThrow(() -> new IllegalStateException("Missing object serializer for entity " + entity.getType()));
+        final LanternWEWorld world = worlds.get(entity.getWorld());
+        return createBaseEntity(entity, world == null ? EditMetrics.GLOBAL : world.getMetrics());
+    }
+
+    /**
+     * Serializes the {@link Entity} into a {@link BaseEntity}, the conversion
+     * of the data to nbt is delayed until the data is accessed.
+     *
+     * @param entity The entity
+     * @param metrics The metrics to record the serialization to
+     * @return The base entity
+     */
+    @SuppressWarnings("unchecked")
+    static BaseEntity createBaseEntity(Entity entity, EditMetrics metrics) {
+        final ObjectSerializer serializer = ObjectStores.getSerializer(entity.getClass());
+        if (serializer == null) {
+            throw new IllegalStateException("Missing object serializer for entity " + entity.getType());
+        }
+        final long start = EditMetrics.start();
         final DataView dataView = serializer.serialize(entity);
-        return new BaseEntity(entity.getType().getId(), DataViewNbt.to(dataView));
+        metrics.record(EditPhase.ENTITY_DATA, start, 1);
+        return new LazyBaseEntity(entity.getType().getId(), DataViewNbt.toLazy(dataView));
     }
 
     @Override
     public ItemStack makeSpongeStack(BaseItemStack baseItemStack) {
-        final ItemType itemType = ItemRegistryModule.get().getTypeByInternalId(baseItemStack.getType())
-                .orElseThrow(() -> new IllegalStateException("Invalid item type: " + baseItemStack.getType()));
-        final LanternItemStack itemStack = new LanternItemStack(itemType, baseItemStack.getAmount());
-        final ObjectStore<LanternItemStack> store = ObjectStoreRegistry.get().get(LanternItemStack.class)
-                .orElseThrow(() -> new IllegalStateException("Unable to access the LanternItemStack store."));
-        final DataView view = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
-        view.set(DATA_VALUE, baseItemStack.getData());
-        store.deserialize(itemStack, view);
-        final Map<Integer, Integer> enchantments = baseItemStack.getEnchantments();
-        if (!enchantments.isEmpty()) {
-            itemStack.offer(Keys.ITEM_ENCHANTMENTS, enchantments.entrySet().stream()
-                    .map(entry -> {
-                        final Enchantment enchantment = EnchantmentRegistryModule.get().getByInternalId(entry.getKey())
-                                .orElseThrow(() -> new IllegalStateException("Invalid enchantment type: " + entry.getKey()));
-                        return new ItemEnchantment(enchantment, entry.getValue());
-                    })
-                    .collect(Collectors.toList()));
-        }
-        return itemStack;
+        // Identical stacks are copied from a cached prototype
+        return ItemStackCache.get().create(baseItemStack);
     }
 
     @Override
     public SpongeWorld getWorld(World world) {
-        return new LanternWEWorld(world);
+        // Reuse the world wrappers, so their state can live across calls
+        return worlds.computeIfAbsent(world, LanternWEWorld::new);
     }
 }
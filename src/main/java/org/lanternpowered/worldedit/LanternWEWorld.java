@@ -24,68 +24,161 @@
  */
 package org.lanternpowered.worldedit;
 
+import com.flowpowered.math.vector.Vector3d;
+import com.flowpowered.math.vector.Vector3i;
+import com.google.common.collect.ImmutableSet;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.MaxChangedBlocksException;
 import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.Vector2D;
+import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.blocks.BlockID;
 import com.sk89q.worldedit.blocks.LazyBlock;
 import com.sk89q.worldedit.entity.BaseEntity;
+import com.sk89q.worldedit.extension.platform.Actor;
+import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.internal.Constants;
 import com.sk89q.worldedit.sponge.SpongeWorld;
 import com.sk89q.worldedit.util.TreeGenerator;
-import org.lanternpowered.server.data.io.store.ObjectSerializer;
-import org.lanternpowered.server.data.io.store.ObjectSerializerRegistry;
+import com.sk89q.worldedit.world.biome.BaseBiome;
 import org.lanternpowered.server.data.io.store.ObjectStore;
-import org.lanternpowered.server.data.io.store.ObjectStoreRegistry;
-import org.lanternpowered.server.game.registry.type.block.BlockRegistryModule;
+import org.spongepowered.api.Sponge;
 import org.spongepowered.api.block.BlockState;
 import org.spongepowered.api.block.tileentity.TileEntity;
 import org.spongepowered.api.data.DataContainer;
-import org.spongepowered.api.data.DataQuery;
 import org.spongepowered.api.data.DataView;
 import org.spongepowered.api.entity.Entity;
+import org.spongepowered.api.entity.EntityType;
 import org.spongepowered.api.item.inventory.Carrier;
+import org.spongepowered.api.world.BlockChangeFlag;
+import org.spongepowered.api.world.BlockChangeFlags;
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.Location;
 import org.spongepowered.api.world.World;
+import org.spongepowered.api.world.biome.BiomeType;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+
+import javax.annotation.Nullable;
 
 final class LanternWEWorld extends SpongeWorld {
 
+    // The amount of biome columns within a chunk
+    static final int CHUNK_AREA = 16 * 16;
+
+    private static final Set<String> NO_COPY_ENTITY_FIELDS = ImmutableSet.copyOf(Constants.NO_COPY_ENTITY_NBT_FIELDS);
+
+    private final EditMetrics metrics;
+    private final TileCapture tileCapture;
+
+    // The edits that are still being applied by the scheduler, newest last
+    private final Deque<ScheduledEdit> scheduledEdits = new ArrayDeque<>();
+
     LanternWEWorld(World world) {
         super(world);
+        this.metrics = new EditMetrics(world.getName(), EditMetrics.GLOBAL);
+        this.metrics.register();
+        this.tileCapture = new TileCapture(this.metrics);
+    }
+
+    /**
+     * Gets the {@link EditMetrics} of this world.
+     *
+     * @return The edit metrics
+     */
+    EditMetrics getMetrics() {
+        return this.metrics;
     }
 
     @Override
     protected BlockState getBlockState(BaseBlock baseBlock) {
-        return BlockRegistryModule.get().getStateByInternalIdAndData(baseBlock.getId(), (byte) baseBlock.getData()).orElse(null);
+        return getBlockState(baseBlock, this.metrics);
+    }
+
+    @Nullable
+    BlockState getBlockState(BaseBlock baseBlock, EditMetrics metrics) {
+        final long start = EditMetrics.start();
+        final BlockState blockState = BlockStateTable.get().getState(baseBlock.getId(), baseBlock.getData());
+        metrics.record(EditPhase.BLOCK_CONVERSION, start, 1);
+        return blockState;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     protected void applyTileEntityData(TileEntity tileEntity, BaseBlock baseBlock) {
-        final ObjectStore store = ObjectStoreRegistry.get().get(tileEntity.getClass())
-                .orElseThrow(() -> new IllegalStateException("Missing object store for tile " + tileEntity.getType()));
-        final CompoundTag tag = baseBlock.getNbtData();
+        applyTileEntityData(tileEntity, baseBlock.getNbtData(), this.metrics);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void applyTileEntityData(TileEntity tileEntity, @Nullable CompoundTag tag, EditMetrics metrics) {
+        final ObjectStore store = ObjectStores.getStore(tileEntity.getClass());
+        if (store == null) {
+            throw new IllegalStateException("Missing object store for tile " + tileEntity.getType());
+        }
+        long start = EditMetrics.start();
         final DataView dataView = tag == null ? DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED) : DataViewNbt.from(tag);
+        metrics.record(EditPhase.NBT_CONVERSION, start, tag == null ? 0 : tag.getValue().size());
+        start = EditMetrics.start();
         store.deserialize(tileEntity, dataView);
+        metrics.record(EditPhase.TILE_DATA, start, 1);
     }
 
     @SuppressWarnings("unchecked")
     @Override
     protected void applyEntityData(Entity entity, BaseEntity baseEntity) {
-        final ObjectStore store = ObjectStoreRegistry.get().get(entity.getClass())
-                .orElseThrow(() -> new IllegalStateException("Missing object store for entity " + entity.getType()));
-        final CompoundTag tag = baseEntity.getNbtData();
-        final DataView dataView = tag == null ? DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED) : DataViewNbt.from(tag);
-        for (String field : Constants.NO_COPY_ENTITY_NBT_FIELDS) {
-            dataView.remove(DataQuery.of(field));
+        final ObjectStore store = ObjectStores.getStore(entity.getClass());
+        if (store == null) {
+            throw new IllegalStateException("Missing object store for entity " + entity.getType());
+        }
+        long start = EditMetrics.start();
+        final DataViewNbt.LazyTag lazyTag = baseEntity instanceof LazyBaseEntity ? ((LazyBaseEntity) baseEntity).getLazyTag() : null;
+        final DataView dataView;
+        if (lazyTag != null) {
+            // Copy the captured data directly, without converting it to nbt and back
+            dataView = lazyTag.copy(NO_COPY_ENTITY_FIELDS);
+        } else {
+            final CompoundTag tag = baseEntity.getNbtData();
+            // The fields that shouldn't be copied are skipped during the conversion
+            dataView = tag == null ? DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED) :
+                    DataViewNbt.from(tag, NO_COPY_ENTITY_FIELDS);
+        }
+        if (start != 0L) {
+            // Only count the keys when the metrics are enabled
+            this.metrics.record(EditPhase.NBT_CONVERSION, start, dataView.getKeys(false).size());
         }
+        start = EditMetrics.start();
         store.deserialize(entity, dataView);
+        this.metrics.record(EditPhase.ENTITY_DATA, start, 1);
+    }
+
+    @Override
+    public boolean setBlock(Vector position, BaseBlock block, boolean notifyAndLight) throws WorldEditException {
+        if (!this.scheduledEdits.isEmpty()) {
+            // The scheduled edits would otherwise overwrite this change later on
+            LanternWorldEdit.get().getScheduler().complete(this, position.getBlockX() >> 4, position.getBlockZ() >> 4);
+        }
+        beforeChange();
+        final long start = EditMetrics.start();
+        final boolean result = super.setBlock(position, block, notifyAndLight);
+        this.metrics.record(EditPhase.WORLD_WRITE, start, 1);
+        return result;
     }
 
     @Override
     public boolean clearContainerBlockContents(Vector position) {
+        beforeChange();
         final Optional<TileEntity> optTile = getWorld().getTileEntity(position.getBlockX(), position.getBlockY(), position.getBlockZ());
         if (optTile.isPresent() && optTile.get() instanceof Carrier) {
             final Carrier carrier = (Carrier) optTile.get();
@@ -101,26 +194,404 @@ public boolean generateTree(TreeGenerator.TreeType type, EditSession editSession
         return false;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public BaseBlock getBlock(Vector position) {
-        final int state = BlockRegistryModule.get().getStateInternalIdAndData(
-                getWorld().getBlock(position.getBlockX(), position.getBlockY(), position.getBlockZ()));
-        final Optional<TileEntity> optTile = getWorld().getTileEntity(position.getBlockX(), position.getBlockY(), position.getBlockZ());
-        final BaseBlock baseBlock = new BaseBlock(state >> 4, state & 0xf);
-        if (optTile.isPresent()) {
-            final TileEntity tile = optTile.get();
-            final ObjectSerializer serializer = ObjectSerializerRegistry.get().get(tile.getClass()).get();
-            final DataView dataView = serializer.serialize(tile);
-            baseBlock.setNbtData(DataViewNbt.to(dataView));
+        final int x = position.getBlockX();
+        final int y = position.getBlockY();
+        final int z = position.getBlockZ();
+        final BaseBlock scheduledBlock = getScheduledBlock(x, y, z);
+        if (scheduledBlock != null) {
+            return scheduledBlock;
+        }
+        final World world = getWorld();
+        final BlockState blockState = world.getBlock(x, y, z);
+        final long start = EditMetrics.start();
+        final int state = BlockStateTable.get().getIdAndData(blockState);
+        this.metrics.record(EditPhase.BLOCK_CONVERSION, start, 1);
+        final TileEntity tileEntity = this.tileCapture.get(world, x, y, z);
+        if (tileEntity != null) {
+            // The tile data will only be serialized when it's requested
+            return this.tileCapture.createBlock(state >> 4, state & 0xf, tileEntity);
         }
-        return baseBlock;
+        return new BaseBlock(state >> 4, state & 0xf);
     }
 
     @Override
     public BaseBlock getLazyBlock(Vector position) {
-        final int state = BlockRegistryModule.get().getStateInternalIdAndData(
-                getWorld().getBlock(position.getBlockX(), position.getBlockY(), position.getBlockZ()));
+        final BaseBlock scheduledBlock = getScheduledBlock(position.getBlockX(), position.getBlockY(), position.getBlockZ());
+        if (scheduledBlock != null) {
+            return scheduledBlock;
+        }
+        final BlockState blockState = getWorld().getBlock(position.getBlockX(), position.getBlockY(), position.getBlockZ());
+        final long start = EditMetrics.start();
+        final int state = BlockStateTable.get().getIdAndData(blockState);
+        this.metrics.record(EditPhase.BLOCK_CONVERSION, start, 1);
         return new LazyBlock(state >> 4, state & 0xf, this, position);
     }
+
+    @Override
+    public BaseBiome getBiome(Vector2D position) {
+        final BiomeType biomeType = getWorld().getBiome(position.getBlockX(), 0, position.getBlockZ());
+        return new BaseBiome(BiomeTable.get().getId(biomeType));
+    }
+
+    @Override
+    public boolean setBiome(Vector2D position, BaseBiome biome) {
+        final BiomeType biomeType = BiomeTable.get().getType(biome.getId());
+        if (biomeType == null) {
+            return false;
+        }
+        getWorld().setBiome(position.getBlockX(), 0, position.getBlockZ(), biomeType);
+        return true;
+    }
+
+    /**
+     * Sets the biome ids of the whole chunk column at once, the index
+     * of a column is {@code z << 4 | x}. Negative ids are skipped.
+     *
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @param biomes The biome ids
+     */
+    void setBiomes(int chunkX, int chunkZ, int[] biomes) {
+        final BiomeTable table = BiomeTable.get();
+        final BiomeType[] biomeTypes = new BiomeType[CHUNK_AREA];
+        boolean empty = true;
+        for (int i = 0; i < CHUNK_AREA; i++) {
+            if (biomes[i] >= 0) {
+                biomeTypes[i] = table.getType(biomes[i]);
+                empty &= biomeTypes[i] == null;
+            }
+        }
+        if (empty) {
+            return;
+        }
+        final Chunk chunk = loadChunk(getWorld(), chunkX, chunkZ);
+        // The whole biome volume of the chunk is written by the worker at once,
+        // the columns that aren't changed keep their current biome
+        chunk.getBiomeWorker().fill((x, y, z) -> {
+            final BiomeType biomeType = biomeTypes[(z & 0xf) << 4 | (x & 0xf)];
+            return biomeType != null ? biomeType : chunk.getBiome(x, y, z);
+        });
+    }
+
+    /**
+     * Creates all the given entities, the entities are grouped
+     * by chunk and every group is spawned at once.
+     *
+     * @param entities The entities to create
+     * @return The created entities, in the order of the given entities, the
+     *         entities that couldn't be created are {@code null}
+     */
+    List<Entity> createEntities(Collection<? extends com.sk89q.worldedit.entity.Entity> entities) {
+        final World world = getWorld();
+        final List<Entity> created = new ArrayList<>(entities.size());
+        final Map<String, Optional<EntityType>> entityTypes = new HashMap<>();
+        final Map<Long, List<Entity>> entitiesByChunk = new LinkedHashMap<>();
+        for (com.sk89q.worldedit.entity.Entity entity : entities) {
+            final BaseEntity state = entity.getState();
+            if (state == null) {
+                created.add(null);
+                continue;
+            }
+            final EntityType entityType = entityTypes.computeIfAbsent(state.getTypeId(),
+                    id -> Sponge.getRegistry().getType(EntityType.class, id)).orElse(null);
+            if (entityType == null) {
+                created.add(null);
+                continue;
+            }
+            final com.sk89q.worldedit.util.Location location = entity.getLocation();
+            final Vector3d position = new Vector3d(location.getX(), location.getY(), location.getZ());
+            final Entity handle = world.createEntity(entityType, position);
+            if (state.hasNbtData()) {
+                applyEntityData(handle, state);
+            }
+            // Overwrite the position and rotation that were applied by the data
+            handle.setLocationAndRotation(new Location<>(world, position), new Vector3d(location.getPitch(), location.getYaw(), 0));
+            entitiesByChunk.computeIfAbsent(BlockBatch.key(position.getFloorX() >> 4, position.getFloorZ() >> 4),
+                    key -> new ArrayList<>()).add(handle);
+            created.add(handle);
+        }
+        for (Map.Entry<Long, List<Entity>> entry : entitiesByChunk.entrySet()) {
+            final long key = entry.getKey();
+            loadChunk(world, (int) (key >> 32), (int) key);
+            world.spawnEntities(entry.getValue());
+        }
+        return created;
+    }
+
+    /**
+     * Creates a {@link BaseBlock} for the given {@link BlockState}.
+     *
+     * @param blockState The block state
+     * @param tileData The tile entity data, if present
+     * @return The base block
+     */
+    BaseBlock createBaseBlock(BlockState blockState, @Nullable CompoundTag tileData) {
+        final int state = BlockStateTable.get().getIdAndData(blockState);
+        return new BaseBlock(state >> 4, state & 0xf, tileData);
+    }
+
+    /**
+     * Creates a new {@link BatchingExtent} that collects the
+     * changes of the given {@link Extent} and applies them
+     * to this world in batches.
+     *
+     * @param extent The extent to wrap
+     * @param actor The actor that performs the changes
+     * @return The batching extent
+     */
+    BatchingExtent createBatchExtent(Extent extent, @Nullable Actor actor) {
+        return new BatchingExtent(extent, this, actor);
+    }
+
+    /**
+     * Releases the resources of this world, this is
+     * called when the world is unloaded.
+     */
+    void unload() {
+        this.metrics.unregister();
+    }
+
+    /**
+     * Must be called before this world is modified.
+     */
+    void beforeChange() {
+        this.tileCapture.capture();
+    }
+
+    void addScheduledEdit(ScheduledEdit edit) {
+        this.scheduledEdits.add(edit);
+    }
+
+    void removeScheduledEdit(ScheduledEdit edit) {
+        this.scheduledEdits.remove(edit);
+    }
+
+    /**
+     * Gets whether any of the chunks of the given {@link BlockBatch}
+     * are still changed by a {@link ScheduledEdit} of this world.
+     *
+     * @param batch The block batch
+     * @return Whether the batch overlaps with a scheduled edit
+     */
+    boolean hasScheduledEdit(BlockBatch batch) {
+        if (this.scheduledEdits.isEmpty()) {
+            return false;
+        }
+        for (ScheduledEdit edit : this.scheduledEdits) {
+            for (BlockBatch.ChunkEntry entry : batch.getChunks()) {
+                if (edit.batch.hasChunk(entry.x, entry.z)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the changes within the given chunk that are still waiting to be
+     * applied by the {@link ScheduledEdit}s of this world, newest first.
+     *
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @return The pending chunk entries
+     */
+    List<BlockBatch.ChunkEntry> getScheduledChunks(int chunkX, int chunkZ) {
+        if (this.scheduledEdits.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<BlockBatch.ChunkEntry> entries = new ArrayList<>();
+        final Iterator<ScheduledEdit> it = this.scheduledEdits.descendingIterator();
+        while (it.hasNext()) {
+            final BlockBatch.ChunkEntry entry = it.next().batch.getChunk(chunkX, chunkZ);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Gets the block at the given position that is still waiting to
+     * be applied by a {@link ScheduledEdit}, so that reads are
+     * consistent with the edits that were already performed.
+     *
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @param z The z coordinate
+     * @return The scheduled block, or {@code null} if there isn't any
+     */
+    @Nullable
+    private BaseBlock getScheduledBlock(int x, int y, int z) {
+        if (this.scheduledEdits.isEmpty()) {
+            return null;
+        }
+        final Iterator<ScheduledEdit> it = this.scheduledEdits.descendingIterator();
+        while (it.hasNext()) {
+            final BlockBatch batch = it.next().batch;
+            final BlockState state = batch.get(x, y, z);
+            if (state != null) {
+                return createBaseBlock(state, batch.getTileData(x, y, z));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Applies all the changes of the {@link BlockBatch} to this world. All
+     * the blocks are placed first, the tile data is applied afterwards.
+     *
+     * <p>The blocks are placed in the passes of the {@link PreparedChunk}s, so
+     * attached blocks are placed after the blocks they attach to. In fast mode,
+     * the blocks within the edit are placed without neighbor updates, the lighting
+     * is still updated.
+     * The blocks on the boundary of the edit are placed afterwards in a single
+     * pass, with updates, so the surrounding blocks are only notified once the
+     * whole edit is in place.</p>
+     *
+     * @param batch The block batch
+     * @param metrics The metrics to record the changes to
+     * @param fast Whether fast mode should be used
+     */
+    void applyBatch(BlockBatch batch, EditMetrics metrics, boolean fast) {
+        beforeChange();
+        if (fast && ParallelApplier.ENABLED && batch.getChunks().size() > 1) {
+            ParallelApplier.apply(this, batch, metrics);
+            return;
+        }
+        final World world = getWorld();
+        final List<PreparedChunk> chunks = new ArrayList<>(batch.getChunks().size());
+        for (BlockBatch.ChunkEntry entry : batch.getChunks()) {
+            chunks.add(new PreparedChunk(batch, entry, fast));
+            applyQuirks(loadChunk(world, entry.x, entry.z), entry);
+        }
+        for (int pass = 0; pass < PreparedChunk.PASSES; pass++) {
+            final BlockChangeFlag flag = getFlag(pass, fast);
+            for (PreparedChunk chunk : chunks) {
+                final int from = chunk.getPassStart(pass);
+                final int to = chunk.getPassEnd(pass);
+                if (from == to) {
+                    continue;
+                }
+                final long start = EditMetrics.start();
+                applyBlocks(loadChunk(world, chunk.entry.x, chunk.entry.z), chunk, from, to, flag);
+                metrics.record(EditPhase.WORLD_WRITE, start, to - from);
+            }
+        }
+        for (BlockBatch.ChunkEntry entry : batch.getChunks()) {
+            applyTileData(world, entry, metrics);
+        }
+    }
+
+    /**
+     * Gets the {@link BlockChangeFlag} that should be used to
+     * apply the changes of the given {@link PreparedChunk} pass.
+     *
+     * @param pass The pass
+     * @param fast Whether fast mode is used
+     * @return The block change flag
+     */
+    static BlockChangeFlag getFlag(int pass, boolean fast) {
+        // Only the neighbor notifications are skipped, NONE would skip the lighting updates as well
+        return fast && pass == PreparedChunk.PASS_INTERIOR ? BlockChangeFlags.PHYSICS : BlockChangeFlags.ALL;
+    }
+
+    /**
+     * Applies the quirks of the {@link com.sk89q.worldedit.extent.world.BlockQuirkExtent}
+     * for the changes of the chunk entry, which are batched below that extent. The
+     * inventories of the containers that will be replaced are cleared, so they don't
+     * drop their contents, and the ice that will be replaced is removed first, so it
+     * doesn't turn into water.
+     *
+     * @param chunk The chunk
+     * @param entry The chunk entry
+     */
+    static void applyQuirks(Chunk chunk, BlockBatch.ChunkEntry entry) {
+        for (TileEntity tileEntity : chunk.getTileEntities()) {
+            if (tileEntity instanceof Carrier) {
+                final Location<World> location = tileEntity.getLocation();
+                if (entry.get(location.getBlockX(), location.getBlockY(), location.getBlockZ()) != null) {
+                    ((Carrier) tileEntity).getInventory().clear();
+                }
+            }
+        }
+        final BlockStateTable table = BlockStateTable.get();
+        final BlockState air = table.getState(BlockID.AIR, 0);
+        if (air == null) {
+            return;
+        }
+        final int baseX = entry.x << 4;
+        final int baseZ = entry.z << 4;
+        for (int i = 0; i < BlockBatch.SECTION_COUNT; i++) {
+            final BlockState[] section = entry.sections[i];
+            if (section == null) {
+                continue;
+            }
+            for (int j = 0; j < BlockBatch.SECTION_VOLUME; j++) {
+                if (section[j] == null) {
+                    continue;
+                }
+                final int x = baseX | (j & 0xf);
+                final int y = i << 4 | j >> 8;
+                final int z = baseZ | ((j >> 4) & 0xf);
+                final BlockState current = chunk.getBlock(x, y, z);
+                if (current != section[j] && table.getIdAndData(current) >> 4 == BlockID.ICE) {
+                    chunk.setBlock(x, y, z, air, BlockChangeFlags.NONE);
+                }
+            }
+        }
+    }
+
+    static Chunk loadChunk(World world, int chunkX, int chunkZ) {
+        return world.loadChunk(chunkX, 0, chunkZ, true)
+                .orElseThrow(() -> new IllegalStateException("Unable to load the chunk at " + chunkX + ", " + chunkZ));
+    }
+
+    /**
+     * Applies a range of the changes of the {@link PreparedChunk}. The chunk is
+     * only looked up once, instead of once for every block. The sections that are
+     * changed completely are written at once through the block worker of the
+     * section, if the changes are applied with all the updates.
+     *
+     * @param chunk The chunk
+     * @param prepared The prepared changes
+     * @param from The index of the first change, inclusive
+     * @param to The index of the last change, exclusive
+     * @param flag The block change flag
+     */
+    static void applyBlocks(Chunk chunk, PreparedChunk prepared, int from, int to, BlockChangeFlag flag) {
+        final int baseX = prepared.entry.x << 4;
+        final int baseZ = prepared.entry.z << 4;
+        int i = from;
+        while (i < to) {
+            final int end = prepared.getSectionEnd(i, to);
+            // The block workers don't accept a flag, they apply all the updates
+            if (end - i == BlockBatch.SECTION_VOLUME && flag == BlockChangeFlags.ALL) {
+                // The changes of a complete section are ordered by their index within the section
+                final int offset = i;
+                final int baseY = (prepared.positions[i] >> 12) << 4;
+                chunk.getBlockView(new Vector3i(baseX, baseY, baseZ), new Vector3i(baseX | 0xf, baseY | 0xf, baseZ | 0xf))
+                        .getBlockWorker().fill((x, y, z) -> prepared.states[offset + BlockBatch.index(x, y, z)]);
+                i = end;
+                continue;
+            }
+            for (; i < end; i++) {
+                final int index = prepared.positions[i];
+                chunk.setBlock(baseX | (index & 0xf), index >> 8, baseZ | ((index >> 4) & 0xf), prepared.states[i], flag);
+            }
+        }
+    }
+
+    void applyTileData(World world, BlockBatch.ChunkEntry entry, EditMetrics metrics) {
+        final int baseX = entry.x << 4;
+        final int baseZ = entry.z << 4;
+        for (Map.Entry<Integer, CompoundTag> tileEntry : entry.tileData.entrySet()) {
+            final int index = tileEntry.getKey();
+            final int x = baseX | (index & 0xf);
+            final int y = index >> 8;
+            final int z = baseZ | ((index >> 4) & 0xf);
+            world.getTileEntity(x, y, z).ifPresent(tile -> applyTileEntityData(tile, tileEntry.getValue(), metrics));
+        }
+    }
 }
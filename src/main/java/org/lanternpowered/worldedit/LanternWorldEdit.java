@@ -24,16 +24,102 @@
  */
 package org.lanternpowered.worldedit;
 
+import com.google.inject.Inject;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.event.extent.EditSessionEvent;
+import com.sk89q.worldedit.util.eventbus.Subscribe;
+import org.slf4j.Logger;
+import org.spongepowered.api.Sponge;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.game.state.GameInitializationEvent;
+import org.spongepowered.api.event.game.state.GameStartingServerEvent;
+import org.spongepowered.api.event.game.state.GameStoppingServerEvent;
+import org.spongepowered.api.event.world.UnloadWorldEvent;
 import org.spongepowered.api.plugin.Plugin;
 
 @Plugin(id = "lantern_worldedit")
 public final class LanternWorldEdit {
 
+    private static LanternWorldEdit instance;
+
+    static LanternWorldEdit get() {
+        return instance;
+    }
+
+    private final EditScheduler scheduler = new EditScheduler();
+
+    @Inject private Logger logger;
+
+    public LanternWorldEdit() {
+        instance = this;
+    }
+
+    /**
+     * Gets the {@link Logger} of the plugin.
+     *
+     * @return The logger
+     */
+    Logger getLogger() {
+        return this.logger;
+    }
+
+    /**
+     * Gets the {@link EditScheduler}.
+     *
+     * @return The edit scheduler
+     */
+    EditScheduler getScheduler() {
+        return this.scheduler;
+    }
+
     @Listener
     public void onGameInit(GameInitializationEvent event) {
         // Set the default adapter for worldedit
         System.setProperty("worldedit.sponge.adapter", LanternImplAdapter.class.getName());
+        // Listen for edit sessions to apply our own extents
+        WorldEdit.getInstance().getEventBus().register(this);
+        // Start the scheduler that applies the large edits
+        this.scheduler.start(this);
+        // Expose the edit metrics through JMX
+        EditMetrics.GLOBAL.register();
+        Sponge.getCommandManager().register(this, LanternWorldEditCommands.create(this), "lwe", "lanternworldedit");
+    }
+
+    @Listener
+    public void onGameStarting(GameStartingServerEvent event) {
+        // All the block types are registered at this point, make
+        // sure that the lookup tables include all of them
+        BlockStateTable.invalidate();
+        BiomeTable.invalidate();
+        ItemStackCache.invalidate();
+    }
+
+    @Listener
+    public void onGameStopping(GameStoppingServerEvent event) {
+        // Finish all the pending edits before the worlds are unloaded
+        this.scheduler.stop();
+    }
+
+    @Listener
+    public void onUnloadWorld(UnloadWorldEvent event) {
+        // Release the wrapper and the metrics of the world
+        LanternImplAdapter.unloadWorld(event.getTargetWorld());
+    }
+
+    @Subscribe
+    public void onEditSession(EditSessionEvent event) {
+        if (!(event.getWorld() instanceof LanternWEWorld)) {
+            return;
+        }
+        if (event.getStage() == EditSession.Stage.BEFORE_CHANGE) {
+            // Collect all the changes and apply them in batches
+            event.setExtent(((LanternWEWorld) event.getWorld()).createBatchExtent(event.getExtent(), event.getActor()));
+        } else if (event.getStage() == EditSession.Stage.BEFORE_HISTORY) {
+            // Only batch the changes while the queue of the edit session is enabled
+            BatchingExtent.linkReorderExtent(event.getExtent());
+            // Record the undo history per chunk section
+            PackedHistory.install(event.getExtent());
+        }
     }
 }
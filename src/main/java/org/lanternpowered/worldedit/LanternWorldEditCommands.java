@@ -0,0 +1,363 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.google.common.collect.ImmutableMap;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.IncompleteRegionException;
+import com.sk89q.worldedit.LocalSession;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.event.extent.EditSessionEvent;
+import com.sk89q.worldedit.extension.input.InputParseException;
+import com.sk89q.worldedit.extension.input.ParserContext;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.session.ClipboardHolder;
+import com.sk89q.worldedit.sponge.SpongePlayer;
+import com.sk89q.worldedit.sponge.SpongeWorldEdit;
+import com.sk89q.worldedit.util.Countable;
+import com.sk89q.worldedit.world.World;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.args.GenericArguments;
+import org.spongepowered.api.command.spec.CommandSpec;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.scheduler.SpongeExecutorService;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.world.biome.BiomeType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+final class LanternWorldEditCommands {
+
+    /**
+     * Creates the {@code /lwe} command.
+     *
+     * @param plugin The plugin instance
+     * @return The command spec
+     */
+    static CommandSpec create(Object plugin) {
+        final SpongeExecutorService syncExecutor = Sponge.getScheduler().createSyncExecutor(plugin);
+        final SpongeExecutorService asyncExecutor = Sponge.getScheduler().createAsyncExecutor(plugin);
+        return CommandSpec.builder()
+                .description(Text.of("LanternWorldEdit commands"))
+                .child(CommandSpec.builder()
+                        .description(Text.of("Copies the selection into the clipboard, using parallel reads"))
+                        .permission("lanternworldedit.command.copy")
+                        .arguments(GenericArguments.flags().flag("e").buildWith(GenericArguments.none()))
+                        .executor((src, args) -> read(src, syncExecutor, args.hasAny("e"), snapshot -> () -> {
+                            final BlockArrayClipboard clipboard = RegionReader.copy(snapshot.snapshot, snapshot.origin);
+                            return () -> {
+                                snapshot.session.setClipboard(new ClipboardHolder(clipboard, snapshot.world.getWorldData()));
+                                snapshot.player.print(snapshot.snapshot.getRegion().getArea() + " block(s) were copied.");
+                            };
+                        }))
+                        .build(), "copy")
+                .child(CommandSpec.builder()
+                        .description(Text.of("Counts the amount of the given blocks within the selection"))
+                        .permission("lanternworldedit.command.count")
+                        .arguments(GenericArguments.remainingJoinedStrings(Text.of("blocks")))
+                        .executor((src, args) -> {
+                            final String input = args.<String>getOne("blocks").get();
+                            return read(src, syncExecutor, false, snapshot -> {
+                                final Set<BaseBlock> searchBlocks = snapshot.parseBlocks(input);
+                                return () -> {
+                                    final int count = RegionReader.count(snapshot.snapshot, searchBlocks);
+                                    return () -> snapshot.player.print("Counted: " + count);
+                                };
+                            });
+                        })
+                        .build(), "count")
+                .child(CommandSpec.builder()
+                        .description(Text.of("Gets the distribution of the blocks within the selection"))
+                        .permission("lanternworldedit.command.distr")
+                        .arguments(GenericArguments.flags().flag("d").buildWith(GenericArguments.none()))
+                        .executor((src, args) -> {
+                            final boolean withData = args.hasAny("d");
+                            return read(src, syncExecutor, false, snapshot -> () -> {
+                                final List<? extends Countable<?>> distribution = withData ?
+                                        RegionReader.getBlockDistributionWithData(snapshot.snapshot) :
+                                        RegionReader.getBlockDistribution(snapshot.snapshot);
+                                return () -> printDistribution(snapshot.player, distribution);
+                            });
+                        })
+                        .build(), "distr")
+                .child(CommandSpec.builder()
+                        .description(Text.of("Gets the distribution of the biomes within the selection"))
+                        .permission("lanternworldedit.command.biomeinfo")
+                        .executor((src, args) -> read(src, syncExecutor, false, snapshot -> () -> {
+                            final List<Countable<Integer>> distribution = RegionReader.getBiomeDistribution(snapshot.snapshot);
+                            return () -> printBiomeDistribution(snapshot.player, distribution);
+                        }))
+                        .build(), "biomeinfo")
+                .child(CommandSpec.builder()
+                        .description(Text.of("Imports a schematic at your position, without loading it into the clipboard"))
+                        .permission("lanternworldedit.command.import")
+                        .arguments(GenericArguments.flags().flag("a").buildWith(GenericArguments.string(Text.of("file"))))
+                        .executor((src, args) -> importSchematic(src, syncExecutor, asyncExecutor,
+                                args.<String>getOne("file").get(), args.hasAny("a")))
+                        .build(), "import")
+                .child(CommandSpec.builder()
+                        .description(Text.of("Shows the edit metrics, or enables, disables or resets them"))
+                        .permission("lanternworldedit.command.stats")
+                        .arguments(GenericArguments.optional(GenericArguments.choices(Text.of("action"),
+                                ImmutableMap.<String, String>of("enable", "enable", "disable", "disable", "reset", "reset"))))
+                        .executor((src, args) -> {
+                            final String action = args.<String>getOne("action").orElse("");
+                            switch (action) {
+                                case "enable":
+                                case "disable":
+                                    EditMetrics.setMetricsEnabled(action.equals("enable"));
+                                    src.sendMessage(Text.of("The edit metrics are now " + action + "d."));
+                                    return CommandResult.success();
+                                case "reset":
+                                    EditMetrics.getRegistered().forEach(EditMetrics::reset);
+                                    src.sendMessage(Text.of("The edit metrics are reset."));
+                                    return CommandResult.success();
+                            }
+                            if (!EditMetrics.isMetricsEnabled()) {
+                                src.sendMessage(Text.of("The edit metrics are disabled, use /lwe stats enable to enable them."));
+                            }
+                            EditMetrics.getRegistered().forEach(metrics -> printMetrics(src, metrics));
+                            return CommandResult.success();
+                        })
+                        .build(), "stats")
+                .build();
+    }
+
+    private static void printMetrics(CommandSource src, EditMetrics metrics) {
+        src.sendMessage(Text.of("Metrics of " + metrics.getName() + ":"));
+        printPhases(src, metrics.getPhases());
+        final List<PhaseMetrics> lastEdit = metrics.getLastEditPhases();
+        if (!lastEdit.isEmpty()) {
+            src.sendMessage(Text.of("Last edit in " + metrics.getName() + ":"));
+            printPhases(src, lastEdit);
+        }
+    }
+
+    private static void printPhases(CommandSource src, List<PhaseMetrics> phases) {
+        for (PhaseMetrics phase : phases) {
+            if (phase.getCount() > 0) {
+                src.sendMessage(Text.of("  " + phase));
+            }
+        }
+    }
+
+    /**
+     * Captures the snapshot of the selection of the player on the main
+     * thread, processes it in parallel and runs the result on the main
+     * thread again.
+     */
+    private static CommandResult read(CommandSource src, SpongeExecutorService syncExecutor, boolean entities,
+            Function<SelectionSnapshot, Supplier<Runnable>> function) throws CommandException {
+        if (!(src instanceof Player)) {
+            throw new CommandException(Text.of("Only players can use this command."));
+        }
+        final SpongePlayer player = SpongeWorldEdit.inst().wrapPlayer((Player) src);
+        final LocalSession session = WorldEdit.getInstance().getSessionManager().get(player);
+        final World world = session.getSelectionWorld();
+        if (!(world instanceof LanternWEWorld)) {
+            throw new CommandException(Text.of("Make a region selection first."));
+        }
+        final SelectionSnapshot snapshot;
+        try {
+            final Region region = session.getSelection(world);
+            snapshot = new SelectionSnapshot(player, session, (LanternWEWorld) world,
+                    RegionSnapshot.capture((LanternWEWorld) world, region, entities), session.getPlacementPosition(player));
+        } catch (IncompleteRegionException e) {
+            throw new CommandException(Text.of("Make a region selection first."), e);
+        }
+        final Supplier<Runnable> task;
+        try {
+            task = function.apply(snapshot);
+        } catch (IllegalArgumentException e) {
+            throw new CommandException(Text.of(e.getMessage()), e);
+        }
+        RegionReader.async(task)
+                .whenComplete((result, throwable) -> syncExecutor.execute(() -> {
+                    if (throwable != null) {
+                        player.printError("Failed to read the selection: " + throwable.getMessage());
+                    } else {
+                        result.run();
+                    }
+                }));
+        return CommandResult.success();
+    }
+
+    /**
+     * Reads the schematic asynchronously and pastes it at the
+     * placement position of the player on the main thread.
+     *
+     * <p>The import doesn't use a edit session, so the block change limit
+     * of the session is checked and the edit session event is posted
+     * instead. The import is refused if other plugins wrap the world,
+     * e.g. to restrict the changes to certain regions. The import is added
+     * to the history of the session once it's done, or once it failed.</p>
+     */
+    private static CommandResult importSchematic(CommandSource src, SpongeExecutorService syncExecutor,
+            SpongeExecutorService asyncExecutor, String name, boolean ignoreAir) throws CommandException {
+        if (!(src instanceof Player)) {
+            throw new CommandException(Text.of("Only players can use this command."));
+        }
+        final SpongePlayer player = SpongeWorldEdit.inst().wrapPlayer((Player) src);
+        final World world = player.getWorld();
+        if (!(world instanceof LanternWEWorld)) {
+            throw new CommandException(Text.of("Schematics can only be imported into Lantern worlds."));
+        }
+        final LocalSession session = WorldEdit.getInstance().getSessionManager().get(player);
+        final Vector position;
+        try {
+            position = session.getPlacementPosition(player);
+        } catch (IncompleteRegionException e) {
+            throw new CommandException(Text.of("Make a region selection first."), e);
+        }
+        final WorldEdit worldEdit = WorldEdit.getInstance();
+        final Path directory = worldEdit.getWorkingDirectoryFile(worldEdit.getConfiguration().saveDir)
+                .toPath().toAbsolutePath().normalize();
+        final Path file = directory.resolve(name.endsWith(".schematic") ? name : name + ".schematic").normalize();
+        if (!file.startsWith(directory) || !Files.isRegularFile(file)) {
+            throw new CommandException(Text.of("The schematic " + name + " doesn't exist."));
+        }
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return SchematicImporter.read(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, asyncExecutor).whenComplete((importer, throwable) -> syncExecutor.execute(() -> {
+            if (throwable != null) {
+                player.printError("Failed to read the schematic: " + throwable.getMessage());
+                return;
+            }
+            final int limit = session.getBlockChangeLimit();
+            if (limit >= 0 && importer.getVolume() > limit) {
+                player.printError("The schematic contains " + importer.getVolume() +
+                        " blocks, which exceeds your block change limit of " + limit + ".");
+                return;
+            }
+            final EditSessionEvent event = new EditSessionEvent(world, player, limit, EditSession.Stage.BEFORE_CHANGE);
+            event.setExtent(world);
+            worldEdit.getEventBus().post(event);
+            if (!isUnrestricted(event.getExtent(), world)) {
+                player.printError("The schematic can't be imported, the changes in this world are restricted.");
+                return;
+            }
+            player.print("Importing " + importer.getVolume() + " blocks.");
+            importer.paste((LanternWEWorld) world, position, ignoreAir, player, syncExecutor, asyncExecutor, history -> {
+                // Remember the import as a single change, so it can be undone like other edits
+                final EditSession editSession = worldEdit.getEditSessionFactory().getEditSession(world, -1, player);
+                editSession.getChangeSet().add(history);
+                session.remember(editSession);
+            });
+        }));
+        return CommandResult.success();
+    }
+
+    /**
+     * Gets whether the extent of a edit session event only
+     * consists of the world and the extents of this plugin.
+     */
+    private static boolean isUnrestricted(Extent extent, World world) {
+        return extent == world || (extent instanceof BatchingExtent && ((BatchingExtent) extent).getExtent() == world);
+    }
+
+    private static void printDistribution(SpongePlayer player, List<? extends Countable<?>> distribution) {
+        long total = 0;
+        for (Countable<?> countable : distribution) {
+            total += countable.getAmount();
+        }
+        player.print("# total blocks: " + total);
+        for (Countable<?> countable : distribution) {
+            final Object id = countable.getID();
+            final String name = id instanceof BaseBlock ?
+                    ((BaseBlock) id).getId() + ":" + ((BaseBlock) id).getData() : String.valueOf(id);
+            player.print(String.format("%-7s (%.3f%%) #%s",
+                    String.valueOf(countable.getAmount()), countable.getAmount() / (double) total * 100.0, name));
+        }
+    }
+
+    private static void printBiomeDistribution(SpongePlayer player, List<Countable<Integer>> distribution) {
+        long total = 0;
+        for (Countable<Integer> countable : distribution) {
+            total += countable.getAmount();
+        }
+        player.print("# total columns: " + total);
+        final BiomeTable table = BiomeTable.get();
+        for (Countable<Integer> countable : distribution) {
+            final BiomeType biomeType = table.getType(countable.getID());
+            final String name = biomeType == null ? String.valueOf(countable.getID()) : biomeType.getName();
+            player.print(String.format("%-7s (%.3f%%) %s",
+                    String.valueOf(countable.getAmount()), countable.getAmount() / (double) total * 100.0, name));
+        }
+    }
+
+    private static final class SelectionSnapshot {
+
+        private final SpongePlayer player;
+        private final LocalSession session;
+        private final LanternWEWorld world;
+        private final RegionSnapshot snapshot;
+        private final Vector origin;
+
+        private SelectionSnapshot(SpongePlayer player, LocalSession session, LanternWEWorld world,
+                RegionSnapshot snapshot, Vector origin) {
+            this.player = player;
+            this.session = session;
+            this.world = world;
+            this.snapshot = snapshot;
+            this.origin = origin;
+        }
+
+        private Set<BaseBlock> parseBlocks(String input) {
+            final ParserContext context = new ParserContext();
+            context.setActor(this.player);
+            context.setWorld(this.world);
+            context.setSession(this.session);
+            context.setRestricted(false);
+            try {
+                return WorldEdit.getInstance().getBlockFactory().parseFromListInput(input, context);
+            } catch (InputParseException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+        }
+    }
+
+    private LanternWorldEditCommands() {
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.worldedit.entity.BaseEntity;
+import org.spongepowered.api.data.DataView;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link BaseEntity} of which the data is held as a {@link DataView}, the
+ * nbt data will only be converted once it's requested.
+ */
+final class LazyBaseEntity extends BaseEntity {
+
+    @Nullable private DataViewNbt.LazyTag lazyTag;
+
+    LazyBaseEntity(String id, DataViewNbt.LazyTag lazyTag) {
+        super(id);
+        this.lazyTag = lazyTag;
+    }
+
+    /**
+     * Gets the lazy tag that holds the data of the entity, this
+     * is {@code null} once the data was replaced.
+     *
+     * @return The lazy tag
+     */
+    @Nullable
+    DataViewNbt.LazyTag getLazyTag() {
+        return this.lazyTag;
+    }
+
+    @Override
+    public boolean hasNbtData() {
+        return this.lazyTag != null || super.hasNbtData();
+    }
+
+    @Nullable
+    @Override
+    public CompoundTag getNbtData() {
+        final DataViewNbt.LazyTag lazyTag = this.lazyTag;
+        return lazyTag != null ? lazyTag.get() : super.getNbtData();
+    }
+
+    @Override
+    public void setNbtData(@Nullable CompoundTag nbtData) {
+        this.lazyTag = null;
+        super.setNbtData(nbtData);
+    }
+}
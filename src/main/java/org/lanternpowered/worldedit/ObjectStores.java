@@ -0,0 +1,92 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import org.lanternpowered.server.data.io.store.ObjectSerializer;
+import org.lanternpowered.server.data.io.store.ObjectSerializerRegistry;
+import org.lanternpowered.server.data.io.store.ObjectStore;
+import org.lanternpowered.server.data.io.store.ObjectStoreRegistry;
+
+import java.util.Optional;
+
+import javax.annotation.Nullable;
+
+/**
+ * Caches the {@link ObjectStore}s and {@link ObjectSerializer}s, so
+ * they only need to be resolved once for every class. Missing entries
+ * aren't cached, they may still be registered later on.
+ */
+@SuppressWarnings("unchecked")
+final class ObjectStores {
+
+    private static final ClassValue<Optional<ObjectStore>> STORES = new ClassValue<Optional<ObjectStore>>() {
+        @Override
+        protected Optional<ObjectStore> computeValue(Class<?> type) {
+            return (Optional) ObjectStoreRegistry.get().get(type);
+        }
+    };
+
+    private static final ClassValue<Optional<ObjectSerializer>> SERIALIZERS = new ClassValue<Optional<ObjectSerializer>>() {
+        @Override
+        protected Optional<ObjectSerializer> computeValue(Class<?> type) {
+            return (Optional) ObjectSerializerRegistry.get().get(type);
+        }
+    };
+
+    /**
+     * Gets the {@link ObjectStore} for the given type.
+     *
+     * @param type The type
+     * @return The object store, or {@code null} if not found
+     */
+    @Nullable
+    static ObjectStore getStore(Class<?> type) {
+        final Optional<ObjectStore> store = STORES.get(type);
+        if (!store.isPresent()) {
+            STORES.remove(type);
+            return null;
+        }
+        return store.get();
+    }
+
+    /**
+     * Gets the {@link ObjectSerializer} for the given type.
+     *
+     * @param type The type
+     * @return The object serializer, or {@code null} if not found
+     */
+    @Nullable
+    static ObjectSerializer getSerializer(Class<?> type) {
+        final Optional<ObjectSerializer> serializer = SERIALIZERS.get(type);
+        if (!serializer.isPresent()) {
+            SERIALIZERS.remove(type);
+            return null;
+        }
+        return serializer.get();
+    }
+
+    private ObjectStores() {
+    }
+}
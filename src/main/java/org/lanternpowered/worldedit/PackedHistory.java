@@ -0,0 +1,378 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.jnbt.NBTInputStream;
+import com.sk89q.jnbt.NBTOutputStream;
+import com.sk89q.worldedit.BlockVector;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.extent.ChangeSetExtent;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.history.UndoContext;
+import com.sk89q.worldedit.history.change.BlockChange;
+import com.sk89q.worldedit.history.change.Change;
+import com.sk89q.worldedit.history.changeset.ChangeSet;
+import org.spongepowered.api.block.BlockState;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * The undo history of a edit session on a {@link LanternWEWorld}. Instead
+ * of keeping a {@link BlockChange} for every changed block, the changes are
+ * grouped per chunk section into {@link HistorySection}s. This history is
+ * added as a single {@link Change} to the change set of the edit session.
+ */
+final class PackedHistory implements Change {
+
+    /**
+     * Whether the packed history should be used.
+     */
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("lanternworldedit.history.packed", "true"));
+
+    /**
+     * The amount of bytes that the packed sections of a single history may use on
+     * the heap, before they are spilled to a memory-mapped file. A negative value
+     * disables spilling.
+     */
+    private static final long SPILL_THRESHOLD = Long.getLong("lanternworldedit.history.spill-threshold", 64L * 1024L * 1024L);
+
+    // The maximum size of a single mapped file
+    private static final int MAX_MAPPING_SIZE = Integer.MAX_VALUE;
+
+    @Nullable private static final Field CHANGE_SET_FIELD = findChangeSetField();
+
+    @Nullable
+    private static Field findChangeSetField() {
+        for (Field field : ChangeSetExtent.class.getDeclaredFields()) {
+            if (field.getType() == ChangeSet.class) {
+                field.setAccessible(true);
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the change set of the {@link ChangeSetExtent} within the given
+     * {@link Extent} with a packed history, if possible.
+     *
+     * @param extent The extent
+     */
+    static void install(Extent extent) {
+        if (!ENABLED || CHANGE_SET_FIELD == null) {
+            return;
+        }
+        final ChangeSetExtent changeSetExtent = BatchingExtent.findExtent(extent, ChangeSetExtent.class);
+        if (changeSetExtent == null) {
+            return;
+        }
+        final BatchingExtent batchingExtent = BatchingExtent.findExtent(changeSetExtent.getExtent(), BatchingExtent.class);
+        if (batchingExtent == null) {
+            return;
+        }
+        try {
+            final ChangeSet changeSet = (ChangeSet) CHANGE_SET_FIELD.get(changeSetExtent);
+            final PackedHistory history = new PackedHistory(batchingExtent.getWorld(), batchingExtent.getMetrics());
+            CHANGE_SET_FIELD.set(changeSetExtent, history.new Recorder(changeSet));
+            batchingExtent.setHistory(history);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates a new packed history that isn't recorded by a {@link ChangeSetExtent},
+     * the changes are added directly through {@link #add(Change)}.
+     *
+     * @param world The world
+     * @param metrics The metrics to record the changes to
+     * @return The packed history
+     */
+    static PackedHistory create(LanternWEWorld world, EditMetrics metrics) {
+        return new PackedHistory(world, metrics);
+    }
+
+    @Nullable
+    static byte[] writeTag(@Nullable CompoundTag tag) {
+        if (tag == null) {
+            return null;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (NBTOutputStream nbtOut = new NBTOutputStream(out)) {
+            nbtOut.writeNamedTag("", tag);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static CompoundTag readTag(byte[] bytes) {
+        try (NBTInputStream nbtIn = new NBTInputStream(new ByteArrayInputStream(bytes))) {
+            return (CompoundTag) nbtIn.readNamedTag().getTag();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final LanternWEWorld world;
+    private final EditMetrics metrics;
+
+    private final Map<Long, HistorySection> sections = new HashMap<>();
+    // The changes that aren't packed, e.g. entity changes
+    private final List<Change> changes = new ArrayList<>();
+    // The positions of which the block changes couldn't be packed
+    private final Set<BlockVector> fallbackPositions = new HashSet<>();
+
+    @Nullable private HistorySection lastSection;
+    private int size;
+
+    private PackedHistory(LanternWEWorld world, EditMetrics metrics) {
+        this.world = world;
+        this.metrics = metrics;
+    }
+
+    private static long key(int x, int y, int z) {
+        return ((long) x << 36) | ((long) (y & 0xf) << 32) | (z & 0xffffffffL);
+    }
+
+    /**
+     * Adds the change to this history, block changes are packed.
+     *
+     * @param change The change
+     */
+    void add(Change change) {
+        if (change instanceof BlockChange) {
+            record((BlockChange) change);
+        } else {
+            this.changes.add(change);
+            this.size++;
+        }
+    }
+
+    private void record(BlockChange change) {
+        final BlockVector position = change.getPosition();
+        final int x = position.getBlockX();
+        final int y = position.getBlockY();
+        final int z = position.getBlockZ();
+        if (y < 0 || y >= BlockBatch.SECTION_COUNT << 4) {
+            return;
+        }
+        // Once a change of a position can't be packed, all the later changes
+        // are kept as well, so they are undone in the right order
+        if (!this.fallbackPositions.isEmpty() && this.fallbackPositions.contains(position)) {
+            addFallback(change);
+            return;
+        }
+        final BlockState after = this.world.getBlockState(change.getCurrent(), this.metrics);
+        if (after == null) {
+            addFallback(change);
+            return;
+        }
+        final long start = EditMetrics.start();
+        final HistorySection section = getOrCreateSection(x >> 4, y >> 4, z >> 4);
+        final int index = BlockBatch.index(x, y, z);
+        // Only the first state before the change needs to be known
+        if (!section.hasBefore(index)) {
+            final BaseBlock previous = change.getPrevious();
+            final BlockState before = this.world.getBlockState(previous, this.metrics);
+            if (before == null) {
+                addFallback(change);
+                return;
+            }
+            section.setBefore(index, before, previous.hasNbtData() ? writeTag(previous.getNbtData()) : null);
+        }
+        final BaseBlock current = change.getCurrent();
+        section.setAfter(index, after, current.hasNbtData() ? writeTag(current.getNbtData()) : null);
+        this.size++;
+        this.metrics.record(EditPhase.HISTORY, start, 1);
+    }
+
+    /**
+     * Keeps the {@link BlockChange} of which the states
+     * can't be converted, instead of packing it.
+     */
+    private void addFallback(BlockChange change) {
+        this.fallbackPositions.add(change.getPosition());
+        this.changes.add(change);
+        this.size++;
+    }
+
+    private HistorySection getOrCreateSection(int x, int y, int z) {
+        HistorySection section = this.lastSection;
+        if (section != null && section.x == x && section.y == y && section.z == z) {
+            return section;
+        }
+        section = this.sections.computeIfAbsent(key(x, y, z), key -> new HistorySection(x, y, z));
+        this.lastSection = section;
+        return section;
+    }
+
+    /**
+     * Spills the packed sections to a memory-mapped file, if
+     * they use more memory than the spill threshold.
+     */
+    void seal() {
+        if (SPILL_THRESHOLD < 0) {
+            return;
+        }
+        final List<HistorySection> sections = new ArrayList<>();
+        long size = 0;
+        for (HistorySection section : this.sections.values()) {
+            if (!section.isSpilled()) {
+                sections.add(section);
+                size += section.getPackedSize();
+            }
+        }
+        if (size < SPILL_THRESHOLD) {
+            return;
+        }
+        int from = 0;
+        while (from < sections.size()) {
+            int to = from;
+            long mappingSize = 0;
+            while (to < sections.size() && mappingSize + sections.get(to).getPackedSize() <= MAX_MAPPING_SIZE) {
+                mappingSize += sections.get(to++).getPackedSize();
+            }
+            // The file is deleted once the channel and the mapping are closed
+            try (FileChannel channel = FileChannel.open(Files.createTempFile("lanternworldedit-history", ".bin"),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappingSize);
+                for (int i = from; i < to; i++) {
+                    sections.get(i).spill(buffer);
+                }
+            } catch (IOException e) {
+                // Keep the remaining sections on the heap
+                return;
+            }
+            from = to;
+        }
+        this.lastSection = null;
+    }
+
+    @Override
+    public void undo(UndoContext context) throws WorldEditException {
+        // The unpacked block changes happened after the packed changes
+        // of the same position, so they are undone first
+        final ListIterator<Change> it = this.changes.listIterator(this.changes.size());
+        while (it.hasPrevious()) {
+            it.previous().undo(context);
+        }
+        apply(context, true);
+    }
+
+    @Override
+    public void redo(UndoContext context) throws WorldEditException {
+        apply(context, false);
+        for (Change change : this.changes) {
+            change.redo(context);
+        }
+    }
+
+    private void apply(UndoContext context, boolean undo) throws WorldEditException {
+        final Extent extent = context.getExtent();
+        if (extent == null) {
+            throw new IllegalStateException("The undo context has no extent.");
+        }
+        final BatchingExtent batchingExtent = BatchingExtent.findExtent(extent, BatchingExtent.class);
+        final HistorySection.BlockWriter writer;
+        if (batchingExtent != null && batchingExtent.getWorld() == this.world && batchingExtent.isBatching()) {
+            // Write the states directly into the batch, without converting them to blocks
+            writer = batchingExtent::setBlockState;
+        } else {
+            writer = (x, y, z, state, tileData) -> extent.setBlock(new Vector(x, y, z), this.world.createBaseBlock(state, tileData));
+        }
+        final long start = EditMetrics.start();
+        int count = 0;
+        for (HistorySection section : this.sections.values()) {
+            count += section.apply(writer, undo);
+        }
+        this.metrics.record(EditPhase.HISTORY, start, count);
+    }
+
+    /**
+     * The change set that is used by the {@link ChangeSetExtent} of the
+     * edit session, all the block changes are recorded by the packed
+     * history. The packed history is added to the original change set
+     * once the first change is recorded.
+     *
+     * <p>The edit session keeps a reference to the original change set,
+     * so {@link com.sk89q.worldedit.EditSession#getBlockChangeCount()}
+     * counts the packed history as a single change. Only the
+     * {@link ChangeSetExtent} sees the size of this recorder.</p>
+     */
+    private final class Recorder implements ChangeSet {
+
+        private final ChangeSet changeSet;
+        private boolean added;
+
+        private Recorder(ChangeSet changeSet) {
+            this.changeSet = changeSet;
+        }
+
+        @Override
+        public void add(Change change) {
+            PackedHistory.this.add(change);
+            if (!this.added) {
+                this.added = true;
+                this.changeSet.add(PackedHistory.this);
+            }
+        }
+
+        @Override
+        public Iterator<Change> backwardIterator() {
+            return this.changeSet.backwardIterator();
+        }
+
+        @Override
+        public Iterator<Change> forwardIterator() {
+            return this.changeSet.forwardIterator();
+        }
+
+        @Override
+        public int size() {
+            return PackedHistory.this.size;
+        }
+    }
+}
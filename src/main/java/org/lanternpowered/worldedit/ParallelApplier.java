@@ -0,0 +1,104 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.World;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Applies a {@link BlockBatch} to a {@link LanternWEWorld}, the changes are
+ * flattened per chunk on multiple threads. The blocks are only written on the
+ * calling thread, {@link Chunk#setBlock} isn't safe to call from other threads.
+ *
+ * <p>The block states are already converted when the changes are added to the
+ * batch, by the {@link BatchingExtent} on the thread of the edit session, so
+ * the conversion isn't part of the parallel work.</p>
+ */
+final class ParallelApplier {
+
+    /**
+     * Whether edits in fast mode should be prepared on multiple threads.
+     */
+    static final boolean ENABLED = Boolean.getBoolean("lanternworldedit.parallel-apply");
+
+    /**
+     * The amount of threads that will be used to prepare the changes.
+     */
+    private static final int THREADS = Integer.getInteger("lanternworldedit.parallel-apply.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(THREADS);
+
+    /**
+     * Applies all the changes of the {@link BlockBatch}, the result is the same as
+     * {@link LanternWEWorld#applyBatch(BlockBatch, EditMetrics, boolean)} in fast mode.
+     *
+     * @param world The world
+     * @param batch The block batch
+     * @param metrics The metrics to record the changes to
+     */
+    static void apply(LanternWEWorld world, BlockBatch batch, EditMetrics metrics) {
+        final World handle = world.getWorld();
+        final List<BlockBatch.ChunkEntry> entries = new ArrayList<>(batch.getChunks());
+        // The chunks keep the order of the batch, like the sequential path
+        final List<PreparedChunk> chunks = POOL.submit(() -> entries.parallelStream()
+                .map(entry -> new PreparedChunk(batch, entry, true))
+                .collect(Collectors.toList())).join();
+        // Chunks may only be loaded and changed on the main thread
+        final Chunk[] handles = new Chunk[chunks.size()];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = LanternWEWorld.loadChunk(handle, chunks.get(i).entry.x, chunks.get(i).entry.z);
+            LanternWEWorld.applyQuirks(handles[i], chunks.get(i).entry);
+        }
+        for (int pass = 0; pass < PreparedChunk.PASSES; pass++) {
+            final long start = EditMetrics.start();
+            int count = 0;
+            for (int i = 0; i < handles.length; i++) {
+                count += apply(handles[i], chunks.get(i), pass);
+            }
+            metrics.record(EditPhase.WORLD_WRITE, start, count);
+        }
+        for (PreparedChunk chunk : chunks) {
+            world.applyTileData(handle, chunk.entry, metrics);
+        }
+    }
+
+    private static int apply(Chunk handle, PreparedChunk chunk, int pass) {
+        final int from = chunk.getPassStart(pass);
+        final int to = chunk.getPassEnd(pass);
+        if (from < to) {
+            LanternWEWorld.applyBlocks(handle, chunk, from, to, LanternWEWorld.getFlag(pass, true));
+        }
+        return to - from;
+    }
+
+    private ParallelApplier() {
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.worldedit.blocks.BlockType;
+import org.spongepowered.api.block.BlockState;
+
+import java.util.Comparator;
+
+/**
+ * The changes of a {@link BlockBatch.ChunkEntry}, flattened into
+ * arrays so that they can be applied directly.
+ *
+ * <p>The changes are grouped into passes, which are applied in order
+ * over all the chunks of a batch. This keeps the placement order of
+ * the {@link com.sk89q.worldedit.extent.reorder.MultiStageReorder}, blocks
+ * that attach to other blocks are placed after all the other blocks.</p>
+ */
+final class PreparedChunk {
+
+    /**
+     * Orders the prepared chunks by their x and z coordinates.
+     */
+    static final Comparator<PreparedChunk> ORDER =
+            Comparator.<PreparedChunk>comparingInt(chunk -> chunk.entry.x).thenComparingInt(chunk -> chunk.entry.z);
+
+    /**
+     * The pass of the blocks within the edit, in fast mode these
+     * are placed without neighbor updates.
+     */
+    static final int PASS_INTERIOR = 0;
+
+    /**
+     * The pass of the blocks on the boundary of the edit, this pass
+     * is only used when the boundary is split from the interior.
+     */
+    static final int PASS_BOUNDARY = 1;
+
+    /**
+     * The pass of the blocks that should be placed last, e.g. torches.
+     */
+    static final int PASS_ATTACHED = 2;
+
+    /**
+     * The pass of the blocks that should be placed after the
+     * attached blocks, e.g. signs and doors.
+     */
+    static final int PASS_FINAL = 3;
+
+    static final int PASSES = 4;
+
+    final BlockBatch.ChunkEntry entry;
+
+    // The index of the block within the chunk (y << 8 | z << 4 | x)
+    final int[] positions;
+    final BlockState[] states;
+
+    // The index after the last change of every pass
+    private final int[] passEnds = new int[PASSES];
+
+    /**
+     * Flattens the changes of the {@link BlockBatch.ChunkEntry}. This
+     * doesn't modify the batch, so it can be called from any thread.
+     *
+     * @param batch The batch the chunk entry belongs to
+     * @param entry The chunk entry
+     * @param splitBoundary Whether the changes on the boundary of the edit
+     *                      should be moved to the boundary pass
+     */
+    PreparedChunk(BlockBatch batch, BlockBatch.ChunkEntry entry, boolean splitBoundary) {
+        this.entry = entry;
+        final int size = entry.size();
+        final int[] positions = new int[size];
+        final BlockState[] states = new BlockState[size];
+        final byte[] passes = new byte[size];
+        final int[] counts = new int[PASSES];
+        final BlockStateTable table = BlockStateTable.get();
+        final int baseX = entry.x << 4;
+        final int baseZ = entry.z << 4;
+        // Most edits place the same state many times in a row
+        BlockState lastState = null;
+        int lastPlacement = PASS_INTERIOR;
+        int count = 0;
+        for (int i = 0; i < BlockBatch.SECTION_COUNT; i++) {
+            final BlockState[] section = entry.sections[i];
+            if (section == null) {
+                continue;
+            }
+            for (int j = 0; j < BlockBatch.SECTION_VOLUME; j++) {
+                final BlockState state = section[j];
+                if (state == null) {
+                    continue;
+                }
+                if (state != lastState) {
+                    lastState = state;
+                    lastPlacement = getPlacementPass(table, state);
+                }
+                final int index = i << 12 | j;
+                int pass = lastPlacement;
+                if (pass == PASS_INTERIOR && splitBoundary &&
+                        batch.isBoundary(baseX | (index & 0xf), index >> 8, baseZ | ((index >> 4) & 0xf))) {
+                    pass = PASS_BOUNDARY;
+                }
+                positions[count] = index;
+                states[count] = state;
+                passes[count] = (byte) pass;
+                counts[pass]++;
+                count++;
+            }
+        }
+        // Group the changes by pass, the section order is kept within every pass
+        final int[] offsets = new int[PASSES];
+        int end = 0;
+        for (int pass = 0; pass < PASSES; pass++) {
+            offsets[pass] = end;
+            end += counts[pass];
+            this.passEnds[pass] = end;
+        }
+        this.positions = new int[size];
+        this.states = new BlockState[size];
+        for (int i = 0; i < count; i++) {
+            final int offset = offsets[passes[i]]++;
+            this.positions[offset] = positions[i];
+            this.states[offset] = states[i];
+        }
+    }
+
+    private static int getPlacementPass(BlockStateTable table, BlockState state) {
+        final int id = table.getIdAndData(state) >> 4;
+        if (BlockType.shouldPlaceLast(id)) {
+            return PASS_ATTACHED;
+        } else if (BlockType.shouldPlaceFinal(id)) {
+            return PASS_FINAL;
+        }
+        return PASS_INTERIOR;
+    }
+
+    /**
+     * Gets the index of the first change of the given pass.
+     *
+     * @param pass The pass
+     * @return The start index, inclusive
+     */
+    int getPassStart(int pass) {
+        return pass == 0 ? 0 : this.passEnds[pass - 1];
+    }
+
+    /**
+     * Gets the index after the last change of the given pass.
+     *
+     * @param pass The pass
+     * @return The end index, exclusive
+     */
+    int getPassEnd(int pass) {
+        return this.passEnds[pass];
+    }
+
+    /**
+     * Gets the index after the last change that is in the same
+     * section as the change at the given index.
+     *
+     * @param from The index of the first change, inclusive
+     * @param to The index of the last change, exclusive
+     * @return The end index of the section
+     */
+    int getSectionEnd(int from, int to) {
+        final int section = this.positions[from] >> 12;
+        int end = from + 1;
+        while (end < to && this.positions[end] >> 12 == section) {
+            end++;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.util.Countable;
+import com.sk89q.worldedit.util.Location;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/**
+ * Processes {@link RegionSnapshot}s in parallel, without
+ * accessing the live world.
+ */
+final class RegionReader {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Copies the blocks of the snapshot into a new {@link BlockArrayClipboard}.
+     *
+     * @param snapshot The region snapshot
+     * @param origin The origin of the clipboard
+     * @return The clipboard
+     */
+    static BlockArrayClipboard copy(RegionSnapshot snapshot, Vector origin) {
+        final BlockArrayClipboard clipboard = new BlockArrayClipboard(snapshot.getRegion());
+        clipboard.setOrigin(origin);
+        final BlockStateTable table = BlockStateTable.get();
+        // Every chunk writes to a different part of the clipboard
+        run(() -> snapshot.getChunks().parallelStream().forEach(chunk -> snapshot.forEach(chunk, (x, y, z, blockState) -> {
+            final int state = table.getIdAndData(blockState);
+            final BaseBlock block = new BaseBlock(state >> 4, state & 0xf, chunk.getTileData(x, y, z));
+            try {
+                clipboard.setBlock(new Vector(x, y, z), block);
+            } catch (WorldEditException e) {
+                throw new IllegalStateException(e);
+            }
+        })));
+        // The clipboard doesn't support concurrent entity additions
+        for (RegionSnapshot.ChunkSnapshot chunk : snapshot.getChunks()) {
+            for (RegionSnapshot.EntitySnapshot entity : chunk.entities) {
+                clipboard.createEntity(new Location(clipboard, new Vector(entity.position.getX(), entity.position.getY(),
+                        entity.position.getZ()), (float) entity.rotation.getY(), (float) entity.rotation.getX()), entity.state);
+            }
+        }
+        return clipboard;
+    }
+
+    /**
+     * Counts the amount of blocks that match any of the search blocks, a
+     * data value of {@code -1} matches all the data values.
+     *
+     * @param snapshot The region snapshot
+     * @param searchBlocks The search blocks
+     * @return The amount of matching blocks
+     */
+    static int count(RegionSnapshot snapshot, Set<BaseBlock> searchBlocks) {
+        final boolean[] matches = new boolean[BlockStateTable.BLOCK_IDS_AND_DATA];
+        final Set<Integer> overflowMatches = new HashSet<>();
+        for (BaseBlock block : searchBlocks) {
+            final int id = block.getId() << 4;
+            final int minData = block.getData() == -1 ? 0 : block.getData() & 0xf;
+            final int maxData = block.getData() == -1 ? 15 : minData;
+            for (int data = minData; data <= maxData; data++) {
+                if (id >= 0 && id < matches.length) {
+                    matches[id | data] = true;
+                } else {
+                    overflowMatches.add(id | data);
+                }
+            }
+        }
+        final Counts counts = counts(snapshot);
+        int count = 0;
+        for (int i = 0; i < counts.counts.length; i++) {
+            if (matches[i]) {
+                count += counts.counts[i];
+            }
+        }
+        for (Map.Entry<Integer, Integer> entry : counts.overflow.entrySet()) {
+            if (overflowMatches.contains(entry.getKey())) {
+                count += entry.getValue();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the distribution of the block types within the snapshot.
+     *
+     * @param snapshot The region snapshot
+     * @return The block distribution, sorted from most to least common
+     */
+    static List<Countable<Integer>> getBlockDistribution(RegionSnapshot snapshot) {
+        final Counts counts = counts(snapshot);
+        final int[] typeCounts = new int[BlockStateTable.BLOCK_IDS];
+        for (int i = 0; i < counts.counts.length; i++) {
+            typeCounts[i >> 4] += counts.counts[i];
+        }
+        final Map<Integer, Integer> overflowTypeCounts = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : counts.overflow.entrySet()) {
+            overflowTypeCounts.merge(entry.getKey() >> 4, entry.getValue(), Integer::sum);
+        }
+        final List<Countable<Integer>> distribution = new ArrayList<>();
+        for (int i = 0; i < typeCounts.length; i++) {
+            if (typeCounts[i] != 0) {
+                distribution.add(new Countable<>(i, typeCounts[i]));
+            }
+        }
+        for (Map.Entry<Integer, Integer> entry : overflowTypeCounts.entrySet()) {
+            distribution.add(new Countable<>(entry.getKey(), entry.getValue()));
+        }
+        Collections.sort(distribution);
+        Collections.reverse(distribution);
+        return distribution;
+    }
+
+    /**
+     * Gets the distribution of the block types and data values within the snapshot.
+     *
+     * @param snapshot The region snapshot
+     * @return The block distribution, sorted from most to least common
+     */
+    static List<Countable<BaseBlock>> getBlockDistributionWithData(RegionSnapshot snapshot) {
+        final Counts counts = counts(snapshot);
+        final List<Countable<BaseBlock>> distribution = new ArrayList<>();
+        for (int i = 0; i < counts.counts.length; i++) {
+            if (counts.counts[i] != 0) {
+                distribution.add(new Countable<>(new BaseBlock(i >> 4, i & 0xf), counts.counts[i]));
+            }
+        }
+        for (Map.Entry<Integer, Integer> entry : counts.overflow.entrySet()) {
+            final int i = entry.getKey();
+            distribution.add(new Countable<>(new BaseBlock(i >> 4, i & 0xf), entry.getValue()));
+        }
+        Collections.sort(distribution);
+        Collections.reverse(distribution);
+        return distribution;
+    }
+
+    /**
+     * Gets the distribution of the biomes within the snapshot, every
+     * block column within the region is counted once.
+     *
+     * @param snapshot The region snapshot
+     * @return The biome distribution, sorted from most to least common
+     */
+    static List<Countable<Integer>> getBiomeDistribution(RegionSnapshot snapshot) {
+        // The biomes are read per chunk, the biome ids aren't limited to a fixed range
+        final Map<Integer, Integer> counts = call(() -> snapshot.getChunks().parallelStream().collect(
+                () -> new HashMap<Integer, Integer>(),
+                (map, chunk) -> {
+                    final int[] biomes = chunk.getBiomes();
+                    snapshot.forEachColumn(chunk, (x, z) -> map.merge(biomes[(z & 0xf) << 4 | (x & 0xf)], 1, Integer::sum));
+                },
+                (map, other) -> other.forEach((id, count) -> map.merge(id, count, Integer::sum))));
+        final List<Countable<Integer>> distribution = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            distribution.add(new Countable<>(entry.getKey(), entry.getValue()));
+        }
+        Collections.sort(distribution);
+        Collections.reverse(distribution);
+        return distribution;
+    }
+
+    /**
+     * Counts all the block states within the snapshot.
+     */
+    private static Counts counts(RegionSnapshot snapshot) {
+        final BlockStateTable table = BlockStateTable.get();
+        // Every worker thread counts into its own counts, they are merged at the end
+        return call(() -> snapshot.getChunks().parallelStream().collect(
+                Counts::new,
+                (counts, chunk) -> snapshot.forEach(chunk, (x, y, z, blockState) -> counts.add(table.getIdAndData(blockState))),
+                Counts::addAll));
+    }
+
+    /**
+     * The amount of blocks per block state, indexed by {@code id << 4 | data}.
+     */
+    private static final class Counts {
+
+        final int[] counts = new int[BlockStateTable.BLOCK_IDS_AND_DATA];
+        // The states with a id outside the range of the block state table
+        final Map<Integer, Integer> overflow = new HashMap<>();
+
+        void add(int idAndData) {
+            if (idAndData >= 0 && idAndData < this.counts.length) {
+                this.counts[idAndData]++;
+            } else {
+                this.overflow.merge(idAndData, 1, Integer::sum);
+            }
+        }
+
+        void addAll(Counts other) {
+            for (int i = 0; i < this.counts.length; i++) {
+                this.counts[i] += other.counts[i];
+            }
+            for (Map.Entry<Integer, Integer> entry : other.overflow.entrySet()) {
+                this.overflow.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Runs the given task asynchronously on the pool of the reader.
+     *
+     * @param supplier The task
+     * @param <T> The type of the result
+     * @return The future of the result
+     */
+    static <T> CompletableFuture<T> async(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, POOL);
+    }
+
+    private static void run(Runnable runnable) {
+        call(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    private static <T> T call(Supplier<T> supplier) {
+        // Parallel streams use the pool of the task they are started from
+        if (ForkJoinTask.getPool() == POOL) {
+            return supplier.get();
+        }
+        return POOL.submit(supplier::get).join();
+    }
+
+    private RegionReader() {
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.flowpowered.math.vector.Vector3d;
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.Vector2D;
+import com.sk89q.worldedit.entity.BaseEntity;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.block.tileentity.TileEntity;
+import org.spongepowered.api.entity.Entity;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.World;
+import org.spongepowered.api.world.extent.ImmutableBiomeVolume;
+import org.spongepowered.api.world.extent.ImmutableBlockVolume;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * A immutable snapshot of the blocks, tile entities and biomes within a
+ * {@link Region}, which can be processed safely on other threads.
+ *
+ * <p>The changes of the {@link ScheduledEdit}s that are still pending
+ * are included in the snapshot, the same way the reads of the
+ * {@link LanternWEWorld} include them.</p>
+ */
+final class RegionSnapshot {
+
+    /**
+     * Captures the snapshot of the given {@link Region}, this
+     * must be called from the main thread.
+     *
+     * @param world The world
+     * @param region The region
+     * @param entities Whether the entities should be captured
+     * @return The region snapshot
+     */
+    static RegionSnapshot capture(LanternWEWorld world, Region region, boolean entities) {
+        world.beforeChange();
+        final World handle = world.getWorld();
+        final Vector min = region.getMinimumPoint();
+        final Vector max = region.getMaximumPoint();
+        final int minY = Math.max(0, min.getBlockY());
+        final int maxY = Math.min((BlockBatch.SECTION_COUNT << 4) - 1, max.getBlockY());
+        final List<ChunkSnapshot> chunks = new ArrayList<>();
+        for (Vector2D position : region.getChunks()) {
+            final int chunkX = position.getBlockX();
+            final int chunkZ = position.getBlockZ();
+            final Chunk chunk = handle.loadChunk(chunkX, 0, chunkZ, true)
+                    .orElseThrow(() -> new IllegalStateException("Unable to load the chunk at " + chunkX + ", " + chunkZ));
+            Map<Integer, DataViewNbt.LazyTag> tileData = Collections.emptyMap();
+            for (TileEntity tileEntity : chunk.getTileEntities()) {
+                final int y = tileEntity.getLocation().getBlockY();
+                if (y < minY || y > maxY || !region.contains(new Vector(
+                        tileEntity.getLocation().getBlockX(), y, tileEntity.getLocation().getBlockZ()))) {
+                    continue;
+                }
+                if (tileData.isEmpty()) {
+                    tileData = new HashMap<>();
+                }
+                // Serialize the data now, the conversion to nbt is delayed
+                // until it's needed, and can happen on a different thread
+                tileData.put(BlockBatch.chunkIndex(tileEntity.getLocation().getBlockX(), y,
+                        tileEntity.getLocation().getBlockZ()), TileBlock.serialize(tileEntity, world.getMetrics()));
+            }
+            // The entities of the chunk are captured in the same pass
+            List<EntitySnapshot> entitySnapshots = Collections.emptyList();
+            if (entities) {
+                for (Entity entity : chunk.getEntities()) {
+                    final Vector3d position = entity.getLocation().getPosition();
+                    if (entity instanceof Player || !region.contains(new Vector(position.getX(), position.getY(), position.getZ()))) {
+                        continue;
+                    }
+                    if (entitySnapshots.isEmpty()) {
+                        entitySnapshots = new ArrayList<>();
+                    }
+                    entitySnapshots.add(new EntitySnapshot(position, entity.getRotation(),
+                            LanternImplAdapter.createBaseEntity(entity, world.getMetrics())));
+                }
+            }
+            // Scheduled batches aren't modified anymore, so they can be read from other threads
+            final List<BlockBatch.ChunkEntry> pending = world.getScheduledChunks(chunkX, chunkZ);
+            chunks.add(new ChunkSnapshot(chunkX, chunkZ, chunk.getImmutableBlockCopy(), chunk.getImmutableBiomeCopy(),
+                    tileData, pending, entitySnapshots));
+        }
+        return new RegionSnapshot(region, minY, maxY, chunks);
+    }
+
+    private final Region region;
+    private final boolean cuboid;
+    private final int minY;
+    private final int maxY;
+    private final List<ChunkSnapshot> chunks;
+
+    private RegionSnapshot(Region region, int minY, int maxY, List<ChunkSnapshot> chunks) {
+        this.region = region;
+        this.cuboid = region instanceof CuboidRegion;
+        this.minY = minY;
+        this.maxY = maxY;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Gets the {@link Region} of this snapshot.
+     *
+     * @return The region
+     */
+    Region getRegion() {
+        return this.region;
+    }
+
+    /**
+     * Gets the snapshots of all the chunks within the region.
+     *
+     * @return The chunk snapshots
+     */
+    List<ChunkSnapshot> getChunks() {
+        return this.chunks;
+    }
+
+    /**
+     * Visits every block within the region of the given chunk snapshot.
+     *
+     * @param chunk The chunk snapshot
+     * @param visitor The visitor
+     */
+    void forEach(ChunkSnapshot chunk, BlockVisitor visitor) {
+        final Vector min = this.region.getMinimumPoint();
+        final Vector max = this.region.getMaximumPoint();
+        final int minX = Math.max(chunk.x << 4, min.getBlockX());
+        final int maxX = Math.min((chunk.x << 4) | 0xf, max.getBlockX());
+        final int minZ = Math.max(chunk.z << 4, min.getBlockZ());
+        final int maxZ = Math.min((chunk.z << 4) | 0xf, max.getBlockZ());
+        for (int y = this.minY; y <= this.maxY; y++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int x = minX; x <= maxX; x++) {
+                    // Cuboids contain every position within the bounds
+                    if (this.cuboid || this.region.contains(new Vector(x, y, z))) {
+                        visitor.visit(x, y, z, chunk.getBlock(x, y, z));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits every block column within the region of the given chunk snapshot, a
+     * column is within the region if any of its blocks is within the region.
+     *
+     * @param chunk The chunk snapshot
+     * @param visitor The visitor
+     */
+    void forEachColumn(ChunkSnapshot chunk, ColumnVisitor visitor) {
+        final Vector min = this.region.getMinimumPoint();
+        final Vector max = this.region.getMaximumPoint();
+        final int minX = Math.max(chunk.x << 4, min.getBlockX());
+        final int maxX = Math.min((chunk.x << 4) | 0xf, max.getBlockX());
+        final int minZ = Math.max(chunk.z << 4, min.getBlockZ());
+        final int maxZ = Math.min((chunk.z << 4) | 0xf, max.getBlockZ());
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int x = minX; x <= maxX; x++) {
+                if (this.cuboid || containsColumn(x, z)) {
+                    visitor.visit(x, z);
+                }
+            }
+        }
+    }
+
+    private boolean containsColumn(int x, int z) {
+        for (int y = this.minY; y <= this.maxY; y++) {
+            if (this.region.contains(new Vector(x, y, z))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A entity that was captured within the region.
+     */
+    static final class EntitySnapshot {
+
+        final Vector3d position;
+        final Vector3d rotation;
+        final BaseEntity state;
+
+        private EntitySnapshot(Vector3d position, Vector3d rotation, BaseEntity state) {
+            this.position = position;
+            this.rotation = rotation;
+            this.state = state;
+        }
+    }
+
+    @FunctionalInterface
+    interface BlockVisitor {
+
+        void visit(int x, int y, int z, BlockState blockState);
+    }
+
+    @FunctionalInterface
+    interface ColumnVisitor {
+
+        void visit(int x, int z);
+    }
+
+    static final class ChunkSnapshot {
+
+        final int x;
+        final int z;
+
+        final List<EntitySnapshot> entities;
+
+        private final ImmutableBlockVolume blocks;
+        private final ImmutableBiomeVolume biomes;
+        private final Map<Integer, DataViewNbt.LazyTag> tileData;
+
+        /**
+         * The changes of the scheduled edits, newest first.
+         */
+        private final List<BlockBatch.ChunkEntry> pending;
+
+        private ChunkSnapshot(int x, int z, ImmutableBlockVolume blocks, ImmutableBiomeVolume biomes,
+                Map<Integer, DataViewNbt.LazyTag> tileData, List<BlockBatch.ChunkEntry> pending, List<EntitySnapshot> entities) {
+            this.x = x;
+            this.z = z;
+            this.blocks = blocks;
+            this.biomes = biomes;
+            this.tileData = tileData;
+            this.pending = pending;
+            this.entities = entities;
+        }
+
+        /**
+         * Gets the block state at the given position.
+         *
+         * @param x The x coordinate
+         * @param y The y coordinate
+         * @param z The z coordinate
+         * @return The block state
+         */
+        BlockState getBlock(int x, int y, int z) {
+            for (BlockBatch.ChunkEntry entry : this.pending) {
+                final BlockState state = entry.get(x, y, z);
+                if (state != null) {
+                    return state;
+                }
+            }
+            return this.blocks.getBlock(x, y, z);
+        }
+
+        /**
+         * Gets the biome ids of the whole chunk column at
+         * once, the index of a column is {@code z << 4 | x}.
+         *
+         * @return The biome ids
+         */
+        int[] getBiomes() {
+            final BiomeTable table = BiomeTable.get();
+            final int baseX = this.x << 4;
+            final int baseZ = this.z << 4;
+            final int[] biomes = new int[LanternWEWorld.CHUNK_AREA];
+            for (int i = 0; i < biomes.length; i++) {
+                biomes[i] = table.getId(this.biomes.getBiome(baseX | (i & 0xf), 0, baseZ | (i >> 4)));
+            }
+            return biomes;
+        }
+
+        /**
+         * Gets the tile data at the given position.
+         *
+         * @param x The x coordinate
+         * @param y The y coordinate
+         * @param z The z coordinate
+         * @return The tile data, or {@code null} if there isn't any
+         */
+        @Nullable
+        CompoundTag getTileData(int x, int y, int z) {
+            for (BlockBatch.ChunkEntry entry : this.pending) {
+                if (entry.get(x, y, z) != null) {
+                    // The pending block replaces the current tile entity
+                    return entry.tileData.get(BlockBatch.chunkIndex(x, y, z));
+                }
+            }
+            final DataViewNbt.LazyTag tileData = this.tileData.isEmpty() ? null : this.tileData.get(BlockBatch.chunkIndex(x, y, z));
+            return tileData == null ? null : tileData.get();
+        }
+    }
+}
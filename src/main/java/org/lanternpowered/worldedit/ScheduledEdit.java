@@ -0,0 +1,212 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.worldedit.extension.platform.Actor;
+import org.spongepowered.api.world.BlockChangeFlag;
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.World;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link BlockBatch} that is being applied to a {@link LanternWEWorld}
+ * by the {@link EditScheduler}, spread over multiple ticks.
+ */
+final class ScheduledEdit {
+
+    final LanternWEWorld world;
+    final BlockBatch batch;
+    private final EditMetrics metrics;
+    private final boolean fast;
+    @Nullable final Actor actor;
+    private final Runnable completion;
+
+    @Nullable private volatile List<PreparedChunk> chunks;
+    @Nullable private volatile RuntimeException failure;
+    @Nullable private CompletableFuture<Void> preparation;
+
+    private int pass;
+    private int chunkIndex;
+    private int blockIndex;
+    private int tileIndex;
+    private int applied;
+    private int ticks;
+
+    ScheduledEdit(LanternWEWorld world, BlockBatch batch, EditMetrics metrics, boolean fast,
+            @Nullable Actor actor, Runnable completion) {
+        this.world = world;
+        this.batch = batch;
+        this.metrics = metrics;
+        this.fast = fast;
+        this.actor = actor;
+        this.completion = completion;
+    }
+
+    /**
+     * Groups the changes of the batch into arrays that can be applied
+     * directly, this can be called from a different thread. The
+     * batch may not be modified during this time.
+     */
+    void prepare() {
+        try {
+            final List<PreparedChunk> chunks = new ArrayList<>(this.batch.getChunks().size());
+            for (BlockBatch.ChunkEntry entry : this.batch.getChunks()) {
+                chunks.add(new PreparedChunk(this.batch, entry, this.fast));
+            }
+            chunks.sort(PreparedChunk.ORDER);
+            this.chunks = chunks;
+        } catch (RuntimeException e) {
+            // Reported by the scheduler once the edit would be applied
+            this.failure = e;
+        }
+    }
+
+    /**
+     * Prepares the edit on the given {@link Executor}, see {@link #prepare()}.
+     *
+     * @param executor The executor
+     */
+    void prepareAsync(Executor executor) {
+        this.preparation = CompletableFuture.runAsync(this::prepare, executor);
+    }
+
+    /**
+     * Waits until the edit is prepared. The edit is prepared on the
+     * current thread if it wasn't passed to a executor.
+     */
+    void awaitPrepared() {
+        final CompletableFuture<Void> preparation = this.preparation;
+        if (preparation != null) {
+            // The failures of prepare are kept until the edit is applied
+            preparation.join();
+        } else if (!isPrepared()) {
+            prepare();
+        }
+    }
+
+    /**
+     * Gets whether the edit is prepared, or failed to be prepared.
+     *
+     * @return Whether the edit is prepared
+     */
+    boolean isPrepared() {
+        return this.chunks != null || this.failure != null;
+    }
+
+    /**
+     * Applies the changes until the deadline is reached.
+     *
+     * @param deadline The deadline, in nanoseconds, see {@link System#nanoTime()}
+     * @param bounded Whether the deadline should be respected
+     * @return Whether all the changes are applied
+     */
+    boolean apply(long deadline, boolean bounded) {
+        final List<PreparedChunk> chunks = this.chunks;
+        if (chunks == null) {
+            final RuntimeException failure = this.failure;
+            if (failure != null) {
+                throw failure;
+            }
+            throw new IllegalStateException("The edit isn't prepared yet.");
+        }
+        this.ticks++;
+        this.world.beforeChange();
+        final World world = this.world.getWorld();
+        final long start = EditMetrics.start();
+        final int applied = this.applied;
+        // Apply the blocks first, pass by pass, see PreparedChunk
+        while (this.pass < PreparedChunk.PASSES) {
+            final BlockChangeFlag flag = LanternWEWorld.getFlag(this.pass, this.fast);
+            while (this.chunkIndex < chunks.size()) {
+                final PreparedChunk chunk = chunks.get(this.chunkIndex);
+                final int from = chunk.getPassStart(this.pass);
+                final int to = chunk.getPassEnd(this.pass);
+                final boolean first = this.pass == 0 && this.blockIndex == 0;
+                if (first || from + this.blockIndex < to) {
+                    final Chunk handle = LanternWEWorld.loadChunk(world, chunk.entry.x, chunk.entry.z);
+                    if (first) {
+                        LanternWEWorld.applyQuirks(handle, chunk.entry);
+                    }
+                    while (from + this.blockIndex < to) {
+                        // The time is only checked between sections, so complete sections
+                        // can still be written at once, see LanternWEWorld#applyBlocks
+                        final int end = chunk.getSectionEnd(from + this.blockIndex, to);
+                        LanternWEWorld.applyBlocks(handle, chunk, from + this.blockIndex, end, flag);
+                        this.applied += end - (from + this.blockIndex);
+                        this.blockIndex = end - from;
+                        if (bounded && System.nanoTime() - deadline >= 0) {
+                            this.metrics.record(EditPhase.WORLD_WRITE, start, this.applied - applied);
+                            return false;
+                        }
+                    }
+                }
+                this.blockIndex = 0;
+                this.chunkIndex++;
+            }
+            this.chunkIndex = 0;
+            this.pass++;
+        }
+        this.metrics.record(EditPhase.WORLD_WRITE, start, this.applied - applied);
+        // Apply the tile entity data once all the blocks are placed
+        while (this.tileIndex < chunks.size()) {
+            this.world.applyTileData(world, chunks.get(this.tileIndex++).entry, this.metrics);
+            if (bounded && this.tileIndex < chunks.size() && System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs the completion of the edit, after all the changes are applied.
+     */
+    void complete() {
+        this.completion.run();
+    }
+
+    /**
+     * Gets the amount of block changes that are applied.
+     *
+     * @return The applied block changes
+     */
+    int getApplied() {
+        return this.applied;
+    }
+
+    /**
+     * Gets the amount of ticks that were used to apply the changes.
+     *
+     * @return The ticks
+     */
+    int getTicks() {
+        return this.ticks;
+    }
+}
@@ -0,0 +1,839 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.jnbt.ByteArrayTag;
+import com.sk89q.jnbt.ByteTag;
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.jnbt.DoubleTag;
+import com.sk89q.jnbt.FloatTag;
+import com.sk89q.jnbt.IntArrayTag;
+import com.sk89q.jnbt.IntTag;
+import com.sk89q.jnbt.ListTag;
+import com.sk89q.jnbt.LongTag;
+import com.sk89q.jnbt.NBTConstants;
+import com.sk89q.jnbt.NBTUtils;
+import com.sk89q.jnbt.ShortTag;
+import com.sk89q.jnbt.StringTag;
+import com.sk89q.jnbt.Tag;
+import com.sk89q.worldedit.BlockVector;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.entity.BaseEntity;
+import com.sk89q.worldedit.entity.Entity;
+import com.sk89q.worldedit.extension.platform.Actor;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.history.change.BlockChange;
+import com.sk89q.worldedit.history.change.Change;
+import com.sk89q.worldedit.history.change.EntityCreate;
+import com.sk89q.worldedit.util.Location;
+import org.spongepowered.api.block.BlockState;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.Nullable;
+
+/**
+ * Imports MCEdit schematics directly into a {@link LanternWEWorld}, without
+ * building a clipboard first. The schematic is read as a stream, the block
+ * arrays are spooled to memory-mapped files and the blocks are applied in
+ * batches of whole chunk columns, section by section. Only a single batch
+ * is kept in memory at a time, the next batch is filled asynchronously.
+ * The tile entities and entities are spooled to a memory-mapped file as
+ * well, and are only read when they are placed.
+ */
+final class SchematicImporter {
+
+    /**
+     * The minimum amount of blocks within a single batch.
+     */
+    private static final int BATCH_SIZE = Integer.getInteger("lanternworldedit.import.batch-size", 262144);
+
+    private static final int MAX_DEPTH = 512;
+
+    /**
+     * Reads the schematic file, this can be called from any thread.
+     *
+     * @param file The schematic file
+     * @return The importer
+     * @throws IOException If the schematic couldn't be read
+     */
+    static SchematicImporter read(Path file) throws IOException {
+        final SchematicImporter importer = new SchematicImporter();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file)), 65536))) {
+            if (in.readByte() != NBTConstants.TYPE_COMPOUND) {
+                throw new IOException("The root tag of the schematic isn't a compound.");
+            }
+            in.readUTF();
+            importer.readRoot(in);
+        } catch (IOException | RuntimeException e) {
+            importer.tags.close();
+            throw e;
+        }
+        importer.tags.map();
+        if (!"Alpha".equals(importer.materials)) {
+            throw new IOException("The schematic doesn't use the Alpha materials.");
+        }
+        final ByteBuffer blocks = importer.blocks;
+        final ByteBuffer data = importer.data;
+        final long volume = (long) importer.width * importer.height * importer.length;
+        if (blocks == null || data == null || blocks.capacity() != volume || data.capacity() != volume) {
+            throw new IOException("The schematic has missing or invalid block data.");
+        }
+        importer.indexTileEntities();
+        return importer;
+    }
+
+    private int width;
+    private int height;
+    private int length;
+    private int originX;
+    private int originY;
+    private int originZ;
+    private int offsetX;
+    private int offsetY;
+    private int offsetZ;
+    @Nullable private String materials;
+
+    @Nullable private ByteBuffer blocks;
+    @Nullable private ByteBuffer data;
+    @Nullable private ByteBuffer addBlocks;
+
+    // The spooled tile entities and entities
+    private final TagSpool tags = new TagSpool();
+    // The offsets of the tile entities within the spool, the key is the index within the block arrays
+    private final Map<Integer, Integer> tileEntities = new HashMap<>();
+    // The positions (x, y, z) and offsets of the tile entities, until the dimensions are known
+    private final List<int[]> tileEntityList = new ArrayList<>();
+    // The offsets of the entities within the spool
+    private final List<Integer> entities = new ArrayList<>();
+
+    // The state of the paste
+    @Nullable private LanternWEWorld world;
+    @Nullable private Actor actor;
+    @Nullable private EditMetrics metrics;
+    @Nullable private PackedHistory history;
+    @Nullable private Consumer<Change> historyConsumer;
+    @Nullable private Executor syncExecutor;
+    @Nullable private Executor asyncExecutor;
+    private boolean ignoreAir;
+    private int minX;
+    private int minY;
+    private int minZ;
+    private int column;
+    private boolean filled;
+    private long applied;
+
+    private SchematicImporter() {
+    }
+
+    /**
+     * Gets the volume of the schematic.
+     *
+     * @return The volume
+     */
+    long getVolume() {
+        return (long) this.width * this.height * this.length;
+    }
+
+    /**
+     * Pastes the schematic into the world, the position is where the player
+     * was located when the schematic was copied. Large schematics are
+     * applied over multiple ticks by the {@link EditScheduler}.
+     *
+     * @param world The world
+     * @param position The position
+     * @param ignoreAir Whether air blocks should be skipped
+     * @param actor The actor that will be notified when the paste is done
+     * @param syncExecutor The executor of the main thread
+     * @param asyncExecutor The executor that fills the batches
+     * @param historyConsumer The consumer of the history of the paste, called on the
+     *     main thread once the paste is done or failed
+     */
+    void paste(LanternWEWorld world, Vector position, boolean ignoreAir, @Nullable Actor actor,
+            Executor syncExecutor, Executor asyncExecutor, Consumer<Change> historyConsumer) {
+        if (this.world != null) {
+            throw new IllegalStateException("The schematic is already pasted.");
+        }
+        this.world = world;
+        this.actor = actor;
+        this.metrics = world.getMetrics().createEditMetrics();
+        this.history = PackedHistory.create(world, this.metrics);
+        this.historyConsumer = historyConsumer;
+        this.syncExecutor = syncExecutor;
+        this.asyncExecutor = asyncExecutor;
+        this.ignoreAir = ignoreAir;
+        this.minX = position.getBlockX() + this.offsetX;
+        this.minY = position.getBlockY() + this.offsetY;
+        this.minZ = position.getBlockZ() + this.offsetZ;
+        pasteNext();
+    }
+
+    private void pasteNext() {
+        final LanternWEWorld world = this.world;
+        final EditMetrics metrics = this.metrics;
+        final Executor syncExecutor = this.syncExecutor;
+        final Executor asyncExecutor = this.asyncExecutor;
+        if (world == null || metrics == null || syncExecutor == null || asyncExecutor == null) {
+            throw new IllegalStateException("The schematic isn't being pasted.");
+        }
+        // Only one batch is filled at a time, the next one is filled
+        // once the previous one is applied or scheduled
+        CompletableFuture.supplyAsync(() -> {
+            final BlockBatch batch = new BlockBatch();
+            final long start = EditMetrics.start();
+            this.filled = fill(batch);
+            metrics.record(EditPhase.BLOCK_CONVERSION, start, batch.size());
+            return batch;
+        }, asyncExecutor).whenCompleteAsync((batch, throwable) -> {
+            if (throwable != null) {
+                fail(throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable);
+                return;
+            }
+            try {
+                apply(world, batch, metrics);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }, syncExecutor);
+    }
+
+    private void apply(LanternWEWorld world, BlockBatch batch, EditMetrics metrics) {
+        final boolean done = this.filled;
+        this.applied += batch.size();
+        if (!batch.isEmpty()) {
+            record(world, batch);
+            final EditScheduler scheduler = LanternWorldEdit.get().getScheduler();
+            if (scheduler.shouldSchedule(world, batch)) {
+                // Continue with the next batch once this one is applied, so only
+                // one batch is kept in memory
+                scheduler.schedule(world, batch, metrics, false, this.actor, done ? this::finish : this::pasteNext);
+                return;
+            }
+            world.applyBatch(batch, metrics, false);
+        }
+        if (done) {
+            finish();
+        } else {
+            pasteNext();
+        }
+    }
+
+    /**
+     * Records the blocks that will be replaced by the {@link BlockBatch}
+     * to the history, this must be called before the batch is applied.
+     */
+    private void record(LanternWEWorld world, BlockBatch batch) {
+        final PackedHistory history = this.history;
+        if (history == null) {
+            throw new IllegalStateException("The schematic isn't being pasted.");
+        }
+        for (BlockBatch.ChunkEntry entry : batch.getChunks()) {
+            for (int i = 0; i < BlockBatch.SECTION_COUNT; i++) {
+                final BlockState[] section = entry.sections[i];
+                if (section == null) {
+                    continue;
+                }
+                for (int j = 0; j < BlockBatch.SECTION_VOLUME; j++) {
+                    final BlockState state = section[j];
+                    if (state == null) {
+                        continue;
+                    }
+                    final int x = entry.x << 4 | (j & 0xf);
+                    final int y = i << 4 | j >> 8;
+                    final int z = entry.z << 4 | (j >> 4 & 0xf);
+                    final BlockVector position = new BlockVector(x, y, z);
+                    history.add(new BlockChange(position, world.getBlock(position),
+                            world.createBaseBlock(state, entry.tileData.get(BlockBatch.chunkIndex(x, y, z)))));
+                }
+            }
+        }
+    }
+
+    private void fail(Throwable throwable) {
+        LanternWorldEdit.get().getLogger().error("Failed to import a schematic after {} blocks.", this.applied, throwable);
+        if (this.actor != null) {
+            this.actor.printError("The import failed after " + this.applied + " blocks: " + throwable.getMessage());
+        }
+        // The blocks that were placed before the failure can still be undone
+        complete();
+    }
+
+    private void complete() {
+        this.tileEntities.clear();
+        this.entities.clear();
+        this.tags.close();
+        final PackedHistory history = this.history;
+        final Consumer<Change> historyConsumer = this.historyConsumer;
+        this.history = null;
+        this.historyConsumer = null;
+        if (history != null && historyConsumer != null) {
+            history.seal();
+            historyConsumer.accept(history);
+        }
+    }
+
+    /**
+     * Fills the {@link BlockBatch} with the next chunk columns of the schematic.
+     *
+     * @param batch The block batch
+     * @return Whether all the chunk columns are filled
+     */
+    private boolean fill(BlockBatch batch) {
+        final int minChunkX = this.minX >> 4;
+        final int minChunkZ = this.minZ >> 4;
+        final int chunksX = ((this.minX + this.width - 1) >> 4) - minChunkX + 1;
+        final int chunksZ = ((this.minZ + this.length - 1) >> 4) - minChunkZ + 1;
+        final int columns = this.width == 0 || this.length == 0 ? 0 : chunksX * chunksZ;
+        while (this.column < columns && batch.size() < BATCH_SIZE) {
+            fillColumn(batch, minChunkX + this.column % chunksX, minChunkZ + this.column / chunksX);
+            this.column++;
+        }
+        return this.column >= columns;
+    }
+
+    private void fillColumn(BlockBatch batch, int chunkX, int chunkZ) {
+        final ByteBuffer blocks = this.blocks;
+        final ByteBuffer data = this.data;
+        if (blocks == null || data == null) {
+            throw new IllegalStateException("The schematic has no block data.");
+        }
+        final ByteBuffer addBlocks = this.addBlocks;
+        final BlockStateTable table = BlockStateTable.get();
+        final int fromX = Math.max(chunkX << 4, this.minX) - this.minX;
+        final int toX = Math.min((chunkX << 4) + 15, this.minX + this.width - 1) - this.minX;
+        final int fromZ = Math.max(chunkZ << 4, this.minZ) - this.minZ;
+        final int toZ = Math.min((chunkZ << 4) + 15, this.minZ + this.length - 1) - this.minZ;
+        final int fromY = Math.max(0, -this.minY);
+        final int toY = Math.min(this.height - 1, (BlockBatch.SECTION_COUNT << 4) - 1 - this.minY);
+        // The y coordinate is iterated first, so the sections are filled one by one
+        for (int y = fromY; y <= toY; y++) {
+            for (int z = fromZ; z <= toZ; z++) {
+                for (int x = fromX; x <= toX; x++) {
+                    final int index = index(x, y, z);
+                    // The tile entity is removed even if the block is skipped, it
+                    // would otherwise be kept until the end of the paste
+                    final Integer tileEntity = this.tileEntities.isEmpty() ? null : this.tileEntities.remove(index);
+                    int id = blocks.get(index) & 0xff;
+                    if (addBlocks != null && (index >> 1) < addBlocks.capacity()) {
+                        final int add = addBlocks.get(index >> 1);
+                        id |= (index & 1) == 0 ? (add & 0x0f) << 8 : (add & 0xf0) << 4;
+                    }
+                    if (id == 0 && this.ignoreAir) {
+                        continue;
+                    }
+                    final BlockState state = table.getState(id, data.get(index) & 0xf);
+                    if (state != null) {
+                        batch.set(this.minX + x, this.minY + y, this.minZ + z, state,
+                                tileEntity == null ? null : this.tags.read(tileEntity));
+                    }
+                }
+            }
+        }
+    }
+
+    private void finish() {
+        final LanternWEWorld world = this.world;
+        if (world == null) {
+            throw new IllegalStateException("The schematic isn't being pasted.");
+        }
+        final PackedHistory history = this.history;
+        if (world == null || history == null) {
+            throw new IllegalStateException("The schematic isn't being pasted.");
+        }
+        // Spawn the entities once all the blocks are placed, the positions
+        // are relative to the minimum point of the copied region
+        final List<ImportedEntity> entities = new ArrayList<>(this.entities.size());
+        for (int offset : this.entities) {
+            final CompoundTag entity = this.tags.read(offset);
+            final ListTag pos = entity.getListTag("Pos");
+            final ListTag rotation = entity.getListTag("Rotation");
+            final String id = entity.getString("id");
+            if (pos.getValue().size() != 3 || id.isEmpty()) {
+                continue;
+            }
+            final Vector position = new Vector(
+                    this.minX + pos.asDouble(0) - this.originX,
+                    this.minY + pos.asDouble(1) - this.originY,
+                    this.minZ + pos.asDouble(2) - this.originZ);
+            final Location location = rotation.getValue().size() == 2 ?
+                    new Location(world, position, rotation.getFloat(0), rotation.getFloat(1)) : new Location(world, position);
+            entities.add(new ImportedEntity(location, new BaseEntity(id, entity)));
+        }
+        // The entities are spawned in batches per chunk
+        final List<org.spongepowered.api.entity.Entity> created = world.createEntities(entities);
+        int spawned = 0;
+        for (int i = 0; i < entities.size(); i++) {
+            final ImportedEntity entity = entities.get(i);
+            entity.created = created.get(i);
+            if (entity.created != null) {
+                history.add(new EntityCreate(entity.location, entity.state, entity));
+                spawned++;
+            }
+        }
+        if (this.actor != null) {
+            this.actor.print("Imported " + this.applied + " blocks and " + spawned + " entities.");
+        }
+        complete();
+    }
+
+    private void readRoot(DataInputStream in) throws IOException {
+        int type;
+        while ((type = in.readByte()) != NBTConstants.TYPE_END) {
+            final String name = in.readUTF();
+            switch (name) {
+                case "Width":
+                    this.width = readInt(in, type);
+                    break;
+                case "Height":
+                    this.height = readInt(in, type);
+                    break;
+                case "Length":
+                    this.length = readInt(in, type);
+                    break;
+                case "WEOriginX":
+                    this.originX = readInt(in, type);
+                    break;
+                case "WEOriginY":
+                    this.originY = readInt(in, type);
+                    break;
+                case "WEOriginZ":
+                    this.originZ = readInt(in, type);
+                    break;
+                case "WEOffsetX":
+                    this.offsetX = readInt(in, type);
+                    break;
+                case "WEOffsetY":
+                    this.offsetY = readInt(in, type);
+                    break;
+                case "WEOffsetZ":
+                    this.offsetZ = readInt(in, type);
+                    break;
+                case "Materials":
+                    if (type == NBTConstants.TYPE_STRING) {
+                        this.materials = in.readUTF();
+                    } else {
+                        skip(in, type, 0);
+                    }
+                    break;
+                case "Blocks":
+                    this.blocks = readByteArray(in, type);
+                    break;
+                case "Data":
+                    this.data = readByteArray(in, type);
+                    break;
+                case "AddBlocks":
+                    this.addBlocks = readByteArray(in, type);
+                    break;
+                case "TileEntities":
+                    readTileEntities(in, type);
+                    break;
+                case "Entities":
+                    readEntities(in, type);
+                    break;
+                default:
+                    skip(in, type, 0);
+                    break;
+            }
+        }
+    }
+
+    private void readTileEntities(DataInputStream in, int type) throws IOException {
+        if (type != NBTConstants.TYPE_LIST) {
+            skip(in, type, 0);
+            return;
+        }
+        final int elementType = in.readByte();
+        final int size = readLength(in);
+        for (int i = 0; i < size; i++) {
+            if (elementType != NBTConstants.TYPE_COMPOUND) {
+                skip(in, elementType, 1);
+                continue;
+            }
+            final Map<String, Tag> values = readCompoundValues(in, 1);
+            final Tag x = values.remove("x");
+            final Tag y = values.remove("y");
+            final Tag z = values.remove("z");
+            if (x instanceof IntTag && y instanceof IntTag && z instanceof IntTag) {
+                this.tileEntityList.add(new int[] { ((IntTag) x).getValue(), ((IntTag) y).getValue(), ((IntTag) z).getValue(),
+                        this.tags.write(new CompoundTag(values)) });
+            }
+        }
+    }
+
+    private void readEntities(DataInputStream in, int type) throws IOException {
+        if (type != NBTConstants.TYPE_LIST) {
+            skip(in, type, 0);
+            return;
+        }
+        final int elementType = in.readByte();
+        final int size = readLength(in);
+        for (int i = 0; i < size; i++) {
+            if (elementType == NBTConstants.TYPE_COMPOUND) {
+                this.entities.add(this.tags.write(readCompound(in, 1)));
+            } else {
+                skip(in, elementType, 1);
+            }
+        }
+    }
+
+    /**
+     * Maps the tile entities to their index within the block arrays,
+     * the dimensions aren't known until the whole schematic is read.
+     */
+    private void indexTileEntities() {
+        for (int[] tileEntity : this.tileEntityList) {
+            final int x = tileEntity[0];
+            final int y = tileEntity[1];
+            final int z = tileEntity[2];
+            if (x >= 0 && x < this.width && y >= 0 && y < this.height && z >= 0 && z < this.length) {
+                this.tileEntities.put(index(x, y, z), tileEntity[3]);
+            }
+        }
+        this.tileEntityList.clear();
+    }
+
+    private int index(int x, int y, int z) {
+        return (y * this.length + z) * this.width + x;
+    }
+
+    @Nullable
+    private static ByteBuffer readByteArray(DataInputStream in, int type) throws IOException {
+        if (type != NBTConstants.TYPE_BYTE_ARRAY) {
+            skip(in, type, 0);
+            return null;
+        }
+        return spool(in);
+    }
+
+    private static int readInt(DataInputStream in, int type) throws IOException {
+        switch (type) {
+            case NBTConstants.TYPE_SHORT:
+                return in.readShort() & 0xffff;
+            case NBTConstants.TYPE_INT:
+                return in.readInt();
+            default:
+                throw new IOException("Expected a short or int tag, but found " + type + ".");
+        }
+    }
+
+    /**
+     * Copies the byte array payload to a temporary file and maps it, so
+     * the block arrays don't have to be kept on the heap.
+     */
+    private static ByteBuffer spool(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid byte array length: " + length);
+        }
+        // The file is deleted once the channel and the mapping are closed
+        try (FileChannel channel = FileChannel.open(Files.createTempFile("lanternworldedit-schematic", ".bin"),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+            final byte[] bytes = new byte[65536];
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int remaining = length;
+            while (remaining > 0) {
+                final int count = Math.min(remaining, bytes.length);
+                in.readFully(bytes, 0, count);
+                buffer.clear();
+                buffer.limit(count);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                remaining -= count;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+    }
+
+    private static CompoundTag readCompound(DataInputStream in, int depth) throws IOException {
+        return new CompoundTag(readCompoundValues(in, depth));
+    }
+
+    private static Map<String, Tag> readCompoundValues(DataInputStream in, int depth) throws IOException {
+        final Map<String, Tag> values = new HashMap<>();
+        int type;
+        while ((type = in.readByte()) != NBTConstants.TYPE_END) {
+            final String name = in.readUTF();
+            values.put(name, readPayload(in, type, depth + 1));
+        }
+        return values;
+    }
+
+    private static Tag readPayload(DataInputStream in, int type, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("The tags are nested too deep.");
+        }
+        switch (type) {
+            case NBTConstants.TYPE_BYTE:
+                return new ByteTag(in.readByte());
+            case NBTConstants.TYPE_SHORT:
+                return new ShortTag(in.readShort());
+            case NBTConstants.TYPE_INT:
+                return new IntTag(in.readInt());
+            case NBTConstants.TYPE_LONG:
+                return new LongTag(in.readLong());
+            case NBTConstants.TYPE_FLOAT:
+                return new FloatTag(in.readFloat());
+            case NBTConstants.TYPE_DOUBLE:
+                return new DoubleTag(in.readDouble());
+            case NBTConstants.TYPE_BYTE_ARRAY: {
+                final byte[] bytes = new byte[readLength(in)];
+                in.readFully(bytes);
+                return new ByteArrayTag(bytes);
+            }
+            case NBTConstants.TYPE_STRING:
+                return new StringTag(in.readUTF());
+            case NBTConstants.TYPE_LIST: {
+                final int elementType = in.readByte();
+                final int size = readLength(in);
+                final List<Tag> tags = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    tags.add(readPayload(in, elementType, depth + 1));
+                }
+                return new ListTag(NBTUtils.getTypeClass(elementType), tags);
+            }
+            case NBTConstants.TYPE_COMPOUND:
+                return readCompound(in, depth);
+            case NBTConstants.TYPE_INT_ARRAY: {
+                final int[] ints = new int[readLength(in)];
+                for (int i = 0; i < ints.length; i++) {
+                    ints[i] = in.readInt();
+                }
+                return new IntArrayTag(ints);
+            }
+            default:
+                throw new IOException("Invalid tag type: " + type);
+        }
+    }
+
+    private static void skip(DataInputStream in, int type, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("The tags are nested too deep.");
+        }
+        switch (type) {
+            case NBTConstants.TYPE_BYTE:
+                skipFully(in, 1);
+                break;
+            case NBTConstants.TYPE_SHORT:
+                skipFully(in, 2);
+                break;
+            case NBTConstants.TYPE_INT:
+            case NBTConstants.TYPE_FLOAT:
+                skipFully(in, 4);
+                break;
+            case NBTConstants.TYPE_LONG:
+            case NBTConstants.TYPE_DOUBLE:
+                skipFully(in, 8);
+                break;
+            case NBTConstants.TYPE_BYTE_ARRAY:
+                skipFully(in, readLength(in));
+                break;
+            case NBTConstants.TYPE_STRING:
+                skipFully(in, in.readUnsignedShort());
+                break;
+            case NBTConstants.TYPE_LIST: {
+                final int elementType = in.readByte();
+                final int size = readLength(in);
+                for (int i = 0; i < size; i++) {
+                    skip(in, elementType, depth + 1);
+                }
+                break;
+            }
+            case NBTConstants.TYPE_COMPOUND: {
+                int elementType;
+                while ((elementType = in.readByte()) != NBTConstants.TYPE_END) {
+                    skipFully(in, in.readUnsignedShort());
+                    skip(in, elementType, depth + 1);
+                }
+                break;
+            }
+            case NBTConstants.TYPE_INT_ARRAY:
+                skipFully(in, readLength(in) * 4L);
+                break;
+            default:
+                throw new IOException("Invalid tag type: " + type);
+        }
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid length: " + length);
+        }
+        return length;
+    }
+
+    private static void skipFully(DataInputStream in, long count) throws IOException {
+        while (count > 0) {
+            final int skipped = in.skipBytes((int) Math.min(count, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                in.readByte();
+                count--;
+            } else {
+                count -= skipped;
+            }
+        }
+    }
+
+    /**
+     * Spools compound tags to a temporary file, which is mapped once all the
+     * tags are written. The tags are read again by their offset.
+     */
+    private static final class TagSpool {
+
+        @Nullable private FileChannel channel;
+        @Nullable private ByteBuffer buffer;
+        private long size;
+
+        int write(CompoundTag tag) throws IOException {
+            final byte[] bytes = PackedHistory.writeTag(tag);
+            if (this.size + 4 + bytes.length > Integer.MAX_VALUE) {
+                throw new IOException("The tile entities and entities of the schematic are too large.");
+            }
+            FileChannel channel = this.channel;
+            if (channel == null) {
+                // The file is deleted once the channel and the mapping are closed
+                channel = this.channel = FileChannel.open(Files.createTempFile("lanternworldedit-schematic", ".nbt"),
+                        StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.length);
+            buffer.putInt(bytes.length).put(bytes).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            final int offset = (int) this.size;
+            this.size += buffer.capacity();
+            return offset;
+        }
+
+        void map() throws IOException {
+            final FileChannel channel = this.channel;
+            if (channel == null) {
+                return;
+            }
+            // The mapping stays valid after the channel is closed
+            try (FileChannel ignored = channel) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, this.size);
+            } finally {
+                this.channel = null;
+            }
+        }
+
+        CompoundTag read(int offset) {
+            final ByteBuffer buffer = this.buffer;
+            if (buffer == null) {
+                throw new IllegalStateException("The tags aren't mapped.");
+            }
+            // The spool is read by the filling and the main thread
+            final ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(offset);
+            final byte[] bytes = new byte[duplicate.getInt()];
+            duplicate.get(bytes);
+            return PackedHistory.readTag(bytes);
+        }
+
+        /**
+         * Closes the channel and releases the mapping, the
+         * mapped file is deleted once it's garbage collected.
+         */
+        void close() {
+            final FileChannel channel = this.channel;
+            this.channel = null;
+            this.buffer = null;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LanternWorldEdit.get().getLogger().warn("Failed to close the schematic spool.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A imported entity, which removes the created entity from the world when it's undone.
+     */
+    private static final class ImportedEntity implements Entity {
+
+        private final Location location;
+        private final BaseEntity state;
+
+        // The entity that was created in the world
+        @Nullable private org.spongepowered.api.entity.Entity created;
+
+        private ImportedEntity(Location location, BaseEntity state) {
+            this.location = location;
+            this.state = state;
+        }
+
+        @Override
+        public BaseEntity getState() {
+            return this.state;
+        }
+
+        @Override
+        public boolean remove() {
+            final org.spongepowered.api.entity.Entity created = this.created;
+            if (created == null) {
+                return false;
+            }
+            created.remove();
+            this.created = null;
+            return true;
+        }
+
+        @Override
+        public Location getLocation() {
+            return this.location;
+        }
+
+        @Override
+        public Extent getExtent() {
+            return this.location.getExtent();
+        }
+
+        @Nullable
+        @Override
+        public <T> T getFacet(Class<? extends T> cls) {
+            return null;
+        }
+    }
+}
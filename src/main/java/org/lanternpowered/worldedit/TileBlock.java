@@ -0,0 +1,95 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import org.lanternpowered.server.data.io.store.ObjectSerializer;
+import org.spongepowered.api.block.tileentity.TileEntity;
+import org.spongepowered.api.data.DataView;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link BaseBlock} that holds a {@link TileEntity}, the
+ * nbt data will only be captured once it's requested.
+ */
+final class TileBlock extends BaseBlock {
+
+    @SuppressWarnings("unchecked")
+    static DataViewNbt.LazyTag serialize(TileEntity tileEntity, EditMetrics metrics) {
+        final ObjectSerializer serializer = ObjectStores.getSerializer(tileEntity.getClass());
+        if (serializer == null) {
+            throw new IllegalStateException("Missing object serializer for tile " + tileEntity.getType());
+        }
+        final long start = EditMetrics.start();
+        final DataView dataView = serializer.serialize(tileEntity);
+        metrics.record(EditPhase.TILE_DATA, start, 1);
+        return DataViewNbt.toLazy(dataView);
+    }
+
+    private final EditMetrics metrics;
+    @Nullable private TileEntity tileEntity;
+    @Nullable private DataViewNbt.LazyTag lazyTag;
+
+    TileBlock(int id, int data, TileEntity tileEntity, EditMetrics metrics) {
+        super(id, data);
+        this.tileEntity = tileEntity;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Captures the nbt data of the tile entity, if
+     * this didn't happen already.
+     */
+    void capture() {
+        final TileEntity tileEntity = this.tileEntity;
+        if (tileEntity != null) {
+            this.tileEntity = null;
+            this.lazyTag = serialize(tileEntity, this.metrics);
+        }
+    }
+
+    @Override
+    public boolean hasNbtData() {
+        return this.tileEntity != null || this.lazyTag != null || super.hasNbtData();
+    }
+
+    @Nullable
+    @Override
+    public CompoundTag getNbtData() {
+        capture();
+        // The data is only converted to nbt once it's requested
+        final DataViewNbt.LazyTag lazyTag = this.lazyTag;
+        return lazyTag != null ? lazyTag.get() : super.getNbtData();
+    }
+
+    @Override
+    public void setNbtData(@Nullable CompoundTag nbtData) {
+        this.tileEntity = null;
+        this.lazyTag = null;
+        super.setNbtData(nbtData);
+    }
+}
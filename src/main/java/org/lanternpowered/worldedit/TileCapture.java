@@ -0,0 +1,173 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.block.tileentity.TileEntity;
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.World;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Tracks the tile entities of the chunks that are being read by WorldEdit. All
+ * the tile entities of a chunk are collected in a single pass, and the captured
+ * {@link TileBlock}s are forced to serialize their data before the world is
+ * modified or at the end of the tick, whatever comes first.
+ */
+final class TileCapture {
+
+    private final EditMetrics metrics;
+    private final Map<Long, ChunkTiles> chunks = new HashMap<>();
+    private final List<WeakReference<TileBlock>> pending = new ArrayList<>();
+
+    @Nullable private ChunkTiles lastChunk;
+    private boolean scheduled;
+
+    TileCapture(EditMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the {@link TileEntity} at the given position.
+     *
+     * @param world The world
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @param z The z coordinate
+     * @return The tile entity, or {@code null} if not present
+     */
+    @Nullable
+    TileEntity get(World world, int x, int y, int z) {
+        if (y < 0 || y >= BlockBatch.SECTION_COUNT << 4) {
+            return null;
+        }
+        final int chunkX = x >> 4;
+        final int chunkZ = z >> 4;
+        ChunkTiles chunkTiles = this.lastChunk;
+        if (chunkTiles == null || chunkTiles.x != chunkX || chunkTiles.z != chunkZ) {
+            chunkTiles = this.chunks.computeIfAbsent(BlockBatch.key(chunkX, chunkZ), key -> createChunkTiles(world, chunkX, chunkZ));
+            this.lastChunk = chunkTiles;
+            schedule();
+        }
+        return chunkTiles.get(x, y, z);
+    }
+
+    private static ChunkTiles createChunkTiles(World world, int chunkX, int chunkZ) {
+        final ChunkTiles chunkTiles = new ChunkTiles(chunkX, chunkZ);
+        final Chunk chunk = world.loadChunk(chunkX, 0, chunkZ, false).orElse(null);
+        if (chunk != null) {
+            for (TileEntity tileEntity : chunk.getTileEntities()) {
+                chunkTiles.put(tileEntity);
+            }
+        }
+        return chunkTiles;
+    }
+
+    /**
+     * Creates a {@link TileBlock} for the given tile entity, the block
+     * will be captured before the world is modified.
+     *
+     * @param id The block id
+     * @param data The block data
+     * @param tileEntity The tile entity
+     * @return The tile block
+     */
+    TileBlock createBlock(int id, int data, TileEntity tileEntity) {
+        final TileBlock block = new TileBlock(id, data, tileEntity, this.metrics);
+        this.pending.add(new WeakReference<>(block));
+        schedule();
+        return block;
+    }
+
+    private void schedule() {
+        if (this.scheduled) {
+            return;
+        }
+        this.scheduled = true;
+        // Capture everything at the end of the tick, the chunks
+        // may be modified by something else after that
+        Sponge.getScheduler().createTaskBuilder()
+                .execute(this::capture)
+                .submit(LanternWorldEdit.get());
+    }
+
+    /**
+     * Captures the data of all the pending {@link TileBlock}s and
+     * clears the collected tile entities. This must be called
+     * before the world is modified.
+     */
+    void capture() {
+        this.scheduled = false;
+        this.chunks.clear();
+        this.lastChunk = null;
+        if (this.pending.isEmpty()) {
+            return;
+        }
+        for (WeakReference<TileBlock> reference : this.pending) {
+            final TileBlock block = reference.get();
+            if (block != null) {
+                block.capture();
+            }
+        }
+        this.pending.clear();
+    }
+
+    private static final class ChunkTiles {
+
+        private final int x;
+        private final int z;
+
+        // Most positions don't have a tile entity, avoid
+        // boxing the index for those positions
+        private final BitSet positions = new BitSet();
+        private final Map<Integer, TileEntity> tileEntities = new HashMap<>();
+
+        private ChunkTiles(int x, int z) {
+            this.x = x;
+            this.z = z;
+        }
+
+        private void put(TileEntity tileEntity) {
+            final int index = BlockBatch.chunkIndex(tileEntity.getLocation().getBlockX(),
+                    tileEntity.getLocation().getBlockY(), tileEntity.getLocation().getBlockZ());
+            this.positions.set(index);
+            this.tileEntities.put(index, tileEntity);
+        }
+
+        @Nullable
+        private TileEntity get(int x, int y, int z) {
+            final int index = BlockBatch.chunkIndex(x, y, z);
+            return this.positions.get(index) ? this.tileEntities.get(index) : null;
+        }
+    }
+}
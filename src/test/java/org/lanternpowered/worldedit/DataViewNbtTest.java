@@ -0,0 +1,244 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.sk89q.jnbt.ByteArrayTag;
+import com.sk89q.jnbt.ByteTag;
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.jnbt.DoubleTag;
+import com.sk89q.jnbt.EndTag;
+import com.sk89q.jnbt.FloatTag;
+import com.sk89q.jnbt.IntArrayTag;
+import com.sk89q.jnbt.IntTag;
+import com.sk89q.jnbt.ListTag;
+import com.sk89q.jnbt.LongTag;
+import com.sk89q.jnbt.NBTInputStream;
+import com.sk89q.jnbt.NBTOutputStream;
+import com.sk89q.jnbt.ShortTag;
+import com.sk89q.jnbt.StringTag;
+import com.sk89q.jnbt.Tag;
+import org.junit.Test;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.DataQuery;
+import org.spongepowered.api.data.DataView;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class DataViewNbtTest {
+
+    private static final Set<String> EXCLUDED = ImmutableSet.of("UUIDMost", "UUIDLeast", "Pos");
+
+    /**
+     * Creates a data view that contains every supported value type, nested
+     * compounds, lists of compounds, empty lists and arrays.
+     */
+    private static DataView createView() {
+        final DataView view = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+        view.set(DataQuery.of("byte"), (byte) 1);
+        view.set(DataQuery.of("short"), (short) 2);
+        view.set(DataQuery.of("int"), 3);
+        view.set(DataQuery.of("long"), 4L);
+        view.set(DataQuery.of("float"), 5f);
+        view.set(DataQuery.of("double"), 6.0);
+        view.set(DataQuery.of("string"), "seven");
+        view.set(DataQuery.of("ints"), new int[] { 8, 9, 10 });
+        view.set(DataQuery.of("bytes"), new byte[] { 11, 12 });
+        view.set(DataQuery.of("empty"), Collections.emptyList());
+        view.set(DataQuery.of("strings"), Arrays.asList("a", "b"));
+        view.set(DataQuery.of("UUIDMost"), 13L);
+        view.set(DataQuery.of("Pos"), Arrays.asList(0.5, 64.0, 0.5));
+        final DataView nested = view.createView(DataQuery.of("nested"));
+        nested.set(DataQuery.of("UUIDMost"), 14L);
+        nested.createView(DataQuery.of("deeper")).set(DataQuery.of("Pos"), new int[] { 15 });
+        final List<DataView> items = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final DataView item = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+            item.set(DataQuery.of("Slot"), (byte) i);
+            item.set(DataQuery.of("UUIDLeast"), (long) i);
+            item.createView(DataQuery.of("tag")).set(DataQuery.of("ench"), Collections.emptyList());
+            items.add(item);
+        }
+        view.set(DataQuery.of("Items"), items);
+        return view;
+    }
+
+    /**
+     * Creates the tag that is expected for {@link #createView()}.
+     */
+    private static CompoundTag createTag() {
+        final Map<String, Tag> values = new HashMap<>();
+        values.put("byte", new ByteTag((byte) 1));
+        values.put("short", new ShortTag((short) 2));
+        values.put("int", new IntTag(3));
+        values.put("long", new LongTag(4L));
+        values.put("float", new FloatTag(5f));
+        values.put("double", new DoubleTag(6.0));
+        values.put("string", new StringTag("seven"));
+        values.put("ints", new IntArrayTag(new int[] { 8, 9, 10 }));
+        values.put("bytes", new ByteArrayTag(new byte[] { 11, 12 }));
+        values.put("empty", new ListTag(EndTag.class, Collections.emptyList()));
+        values.put("strings", new ListTag(StringTag.class, Arrays.asList(new StringTag("a"), new StringTag("b"))));
+        values.put("UUIDMost", new LongTag(13L));
+        values.put("Pos", new ListTag(DoubleTag.class, Arrays.asList(new DoubleTag(0.5), new DoubleTag(64.0), new DoubleTag(0.5))));
+        values.put("nested", new CompoundTag(ImmutableMap.of(
+                "UUIDMost", new LongTag(14L),
+                "deeper", new CompoundTag(ImmutableMap.of("Pos", new IntArrayTag(new int[] { 15 }))))));
+        final List<Tag> items = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            items.add(new CompoundTag(ImmutableMap.of(
+                    "Slot", new ByteTag((byte) i),
+                    "UUIDLeast", new LongTag((long) i),
+                    "tag", new CompoundTag(ImmutableMap.of("ench", new ListTag(EndTag.class, Collections.emptyList()))))));
+        }
+        values.put("Items", new ListTag(CompoundTag.class, items));
+        return new CompoundTag(values);
+    }
+
+    private static void assertTagEquals(Tag expected, Tag actual) {
+        if (expected instanceof CompoundTag) {
+            assertTrue("Expected a compound tag, but found " + actual, actual instanceof CompoundTag);
+            final Map<String, Tag> expectedValues = ((CompoundTag) expected).getValue();
+            final Map<String, Tag> actualValues = ((CompoundTag) actual).getValue();
+            assertEquals(expectedValues.keySet(), actualValues.keySet());
+            for (Map.Entry<String, Tag> entry : expectedValues.entrySet()) {
+                assertTagEquals(entry.getValue(), actualValues.get(entry.getKey()));
+            }
+        } else if (expected instanceof ListTag) {
+            assertTrue("Expected a list tag, but found " + actual, actual instanceof ListTag);
+            assertEquals(((ListTag) expected).getType(), ((ListTag) actual).getType());
+            final List<Tag> expectedValues = ((ListTag) expected).getValue();
+            final List<Tag> actualValues = ((ListTag) actual).getValue();
+            assertEquals(expectedValues.size(), actualValues.size());
+            for (int i = 0; i < expectedValues.size(); i++) {
+                assertTagEquals(expectedValues.get(i), actualValues.get(i));
+            }
+        } else {
+            assertEquals(expected.getClass(), actual.getClass());
+            if (expected instanceof IntArrayTag) {
+                assertArrayEquals(((IntArrayTag) expected).getValue(), ((IntArrayTag) actual).getValue());
+            } else if (expected instanceof ByteArrayTag) {
+                assertArrayEquals(((ByteArrayTag) expected).getValue(), ((ByteArrayTag) actual).getValue());
+            } else {
+                assertEquals(expected.getValue(), actual.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testTo() {
+        assertTagEquals(createTag(), DataViewNbt.to(createView()));
+    }
+
+    @Test
+    public void testToLazy() {
+        final DataViewNbt.LazyTag lazyTag = DataViewNbt.toLazy(createView());
+        final CompoundTag tag = lazyTag.get();
+        assertEquals("seven", tag.getString("string"));
+        assertTagEquals(createTag(), tag);
+        // The tag is only converted once
+        assertSame(tag, lazyTag.get());
+    }
+
+    @Test
+    public void testWriteLazy() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (NBTOutputStream nbtOut = new NBTOutputStream(out)) {
+            nbtOut.writeNamedTag("", DataViewNbt.toLazy(createView()).get());
+        }
+        try (NBTInputStream nbtIn = new NBTInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertTagEquals(createTag(), (CompoundTag) nbtIn.readNamedTag().getTag());
+        }
+    }
+
+    @Test
+    public void testFrom() {
+        final DataView view = DataViewNbt.from(createTag());
+        assertEquals((byte) 1, view.get(DataQuery.of("byte")).get());
+        assertEquals(4L, view.get(DataQuery.of("long")).get());
+        assertArrayEquals(new int[] { 8, 9, 10 }, (int[]) view.get(DataQuery.of("ints")).get());
+        assertTrue(view.getList(DataQuery.of("empty")).get().isEmpty());
+        assertEquals(14L, view.get(DataQuery.of("nested", "UUIDMost")).get());
+        assertArrayEquals(new int[] { 15 }, (int[]) view.get(DataQuery.of("nested", "deeper", "Pos")).get());
+        final List<DataView> items = view.getViewList(DataQuery.of("Items")).get();
+        assertEquals(3, items.size());
+        assertEquals((byte) 2, items.get(2).get(DataQuery.of("Slot")).get());
+        assertTrue(items.get(0).getList(DataQuery.of("tag", "ench")).get().isEmpty());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        assertTagEquals(createTag(), DataViewNbt.to(DataViewNbt.from(createTag())));
+        assertTagEquals(createTag(), DataViewNbt.to(DataViewNbt.from(DataViewNbt.to(createView()))));
+    }
+
+    @Test
+    public void testFromLazy() {
+        // The lazy tag is copied from the backing data view
+        assertTagEquals(createTag(), DataViewNbt.to(DataViewNbt.toLazy(createView()).copy(Collections.emptySet())));
+    }
+
+    @Test
+    public void testFromExcluded() {
+        assertExcluded(DataViewNbt.from(createTag(), EXCLUDED));
+    }
+
+    @Test
+    public void testFromLazyExcluded() {
+        assertExcluded(DataViewNbt.toLazy(createView()).copy(EXCLUDED));
+    }
+
+    private static void assertExcluded(DataView view) {
+        // Only the top level keys are excluded
+        assertFalse(view.contains(DataQuery.of("UUIDMost")));
+        assertFalse(view.contains(DataQuery.of("Pos")));
+        assertEquals(14L, view.get(DataQuery.of("nested", "UUIDMost")).get());
+        assertArrayEquals(new int[] { 15 }, (int[]) view.get(DataQuery.of("nested", "deeper", "Pos")).get());
+        final List<DataView> items = view.getViewList(DataQuery.of("Items")).get();
+        assertEquals(3, items.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals((long) i, items.get(i).get(DataQuery.of("UUIDLeast")).get());
+        }
+        final Map<String, Tag> expected = new HashMap<>(createTag().getValue());
+        expected.keySet().removeAll(EXCLUDED);
+        assertTagEquals(new CompoundTag(expected), DataViewNbt.to(view));
+    }
+}
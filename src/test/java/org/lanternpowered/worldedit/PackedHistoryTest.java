@@ -0,0 +1,145 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.jnbt.CompoundTagBuilder;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.extent.ChangeSetExtent;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.history.UndoContext;
+import com.sk89q.worldedit.history.change.Change;
+import com.sk89q.worldedit.history.changeset.ArrayListHistory;
+import com.sk89q.worldedit.history.changeset.ChangeSet;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.world.World;
+
+import java.util.Iterator;
+
+/**
+ * Records block changes with tile entity data in a {@link PackedHistory}
+ * and checks that they are undone and redone.
+ */
+public class PackedHistoryTest {
+
+    private static final int CHEST = 54;
+    private static final int STONE = 1;
+
+    private static LanternWEWorld world;
+
+    @BeforeClass
+    public static void setup() {
+        TestFixtures.installScheduler();
+        final BlockState[] states = TestFixtures.installBlockStateTable();
+        final World spongeWorld = TestFixtures.createWorld(1, states[0]);
+        world = (LanternWEWorld) new LanternImplAdapter().getWorld(spongeWorld);
+    }
+
+    private static CompoundTag createChestTag() {
+        return CompoundTagBuilder.create()
+                .putString("id", "Chest")
+                .putString("CustomName", "Loot")
+                .putInt("x", 1)
+                .putInt("y", 2)
+                .putInt("z", 3)
+                .build();
+    }
+
+    private static void assertChest(BaseBlock block) {
+        assertEquals(CHEST, block.getId());
+        assertTrue(block.hasNbtData());
+        final CompoundTag tag = block.getNbtData();
+        assertEquals("Chest", tag.getString("id"));
+        assertEquals("Loot", tag.getString("CustomName"));
+        assertEquals(3, tag.getInt("z"));
+    }
+
+    private static void apply(ChangeSet changeSet, BlockArrayClipboard clipboard, boolean undo) throws WorldEditException {
+        final UndoContext context = new UndoContext();
+        context.setExtent(clipboard);
+        final Iterator<Change> it = undo ? changeSet.backwardIterator() : changeSet.forwardIterator();
+        while (it.hasNext()) {
+            final Change change = it.next();
+            if (undo) {
+                change.undo(context);
+            } else {
+                change.redo(context);
+            }
+        }
+    }
+
+    @Test
+    public void testUndoTileEntity() throws WorldEditException {
+        final Vector position = new Vector(1, 2, 3);
+        final BlockArrayClipboard clipboard = new BlockArrayClipboard(new CuboidRegion(Vector.ZERO, new Vector(15, 15, 15)));
+        clipboard.setBlock(position, new BaseBlock(CHEST, 0, createChestTag()));
+
+        final ChangeSet changeSet = new ArrayListHistory();
+        final ChangeSetExtent extent = new ChangeSetExtent(new BatchingExtent(clipboard, world, null), changeSet);
+        PackedHistory.install(extent);
+
+        // Replace the chest, the history must keep its tile entity data
+        extent.setBlock(position, new BaseBlock(STONE));
+        assertEquals(1, changeSet.size());
+        assertEquals(STONE, clipboard.getBlock(position).getId());
+        assertFalse(clipboard.getBlock(position).hasNbtData());
+
+        apply(changeSet, clipboard, true);
+        assertChest(clipboard.getBlock(position));
+
+        apply(changeSet, clipboard, false);
+        assertEquals(STONE, clipboard.getBlock(position).getId());
+        assertFalse(clipboard.getBlock(position).hasNbtData());
+    }
+
+    @Test
+    public void testRedoTileEntity() throws WorldEditException {
+        final Vector position = new Vector(4, 5, 6);
+        final BlockArrayClipboard clipboard = new BlockArrayClipboard(new CuboidRegion(Vector.ZERO, new Vector(15, 15, 15)));
+
+        final ChangeSet changeSet = new ArrayListHistory();
+        final ChangeSetExtent extent = new ChangeSetExtent(new BatchingExtent(clipboard, world, null), changeSet);
+        PackedHistory.install(extent);
+
+        // Place a chest, the history must keep the data of the placed tile entity
+        extent.setBlock(position, new BaseBlock(CHEST, 0, createChestTag()));
+
+        apply(changeSet, clipboard, true);
+        assertEquals(0, clipboard.getBlock(position).getId());
+        assertFalse(clipboard.getBlock(position).hasNbtData());
+
+        apply(changeSet, clipboard, false);
+        assertChest(clipboard.getBlock(position));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeFalse;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.world.BlockChangeFlag;
+import org.spongepowered.api.world.World;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the {@link ParallelApplier} with the sequential path of
+ * {@link LanternWEWorld#applyBatch(BlockBatch, EditMetrics, boolean)} in fast mode.
+ */
+public class ParallelApplierTest {
+
+    private static final int CHUNKS = 4;
+    private static final int HEIGHT = 64;
+    private static final int RUNS = 16;
+
+    private static BlockState[] states;
+
+    @BeforeClass
+    public static void setup() {
+        // The sequential path would use the parallel applier as well
+        assumeFalse(ParallelApplier.ENABLED);
+        TestFixtures.installScheduler();
+        states = TestFixtures.installBlockStateTable();
+    }
+
+    /**
+     * Creates a batch of a few random cuboids, which have an interior, and
+     * scattered blocks, which are on the boundary of the edit.
+     */
+    private static BlockBatch createBatch(Random random) {
+        final int size = CHUNKS << 4;
+        final BlockBatch batch = new BlockBatch();
+        final int cuboids = 1 + random.nextInt(4);
+        for (int i = 0; i < cuboids; i++) {
+            final int minX = random.nextInt(size);
+            final int minY = random.nextInt(HEIGHT);
+            final int minZ = random.nextInt(size);
+            final int maxX = Math.min(size - 1, minX + random.nextInt(40));
+            final int maxY = Math.min(HEIGHT - 1, minY + random.nextInt(20));
+            final int maxZ = Math.min(size - 1, minZ + random.nextInt(40));
+            final BlockState state = states[random.nextInt(states.length)];
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    for (int x = minX; x <= maxX; x++) {
+                        batch.set(x, y, z, state, null);
+                    }
+                }
+            }
+        }
+        final int scattered = random.nextInt(2048);
+        for (int i = 0; i < scattered; i++) {
+            batch.set(random.nextInt(size), random.nextInt(HEIGHT), random.nextInt(size),
+                    states[random.nextInt(states.length)], null);
+        }
+        return batch;
+    }
+
+    private static String describe(int x, int y, int z, BlockState state, BlockChangeFlag flag) {
+        final String change = x + "," + y + "," + z + "=" + BlockStateTable.get().getIdAndData(state);
+        return flag == LanternWEWorld.getFlag(PreparedChunk.PASS_INTERIOR, true) ? change : change + " with updates";
+    }
+
+    @Test
+    public void testApply() {
+        final Random random = new Random(0);
+        for (int run = 0; run < RUNS; run++) {
+            final BlockBatch batch = createBatch(random);
+            // All the blocks must be written on the calling thread, in the same order
+            final Thread thread = Thread.currentThread();
+            final List<String> parallelChanges = new ArrayList<>();
+            final World parallel = TestFixtures.createWorld(CHUNKS, states[0], (x, y, z, state, flag) -> {
+                assertSame(thread, Thread.currentThread());
+                parallelChanges.add(describe(x, y, z, state, flag));
+            });
+            final List<String> sequentialChanges = new ArrayList<>();
+            final World sequential = TestFixtures.createWorld(CHUNKS, states[0],
+                    (x, y, z, state, flag) -> sequentialChanges.add(describe(x, y, z, state, flag)));
+
+            final LanternWEWorld parallelWorld = (LanternWEWorld) new LanternImplAdapter().getWorld(parallel);
+            final LanternWEWorld sequentialWorld = (LanternWEWorld) new LanternImplAdapter().getWorld(sequential);
+            ParallelApplier.apply(parallelWorld, batch, parallelWorld.getMetrics());
+            sequentialWorld.applyBatch(batch, sequentialWorld.getMetrics(), true);
+
+            assertEquals("Run " + run, sequentialChanges, parallelChanges);
+            final int size = CHUNKS << 4;
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int z = 0; z < size; z++) {
+                    for (int x = 0; x < size; x++) {
+                        assertSame("Run " + run + " at " + x + "," + y + "," + z,
+                                sequential.getBlock(x, y, z), parallel.getBlock(x, y, z));
+                    }
+                }
+            }
+        }
+    }
+}
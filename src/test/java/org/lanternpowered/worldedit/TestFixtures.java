@@ -0,0 +1,334 @@
+/*
+ * This file is part of LanternWorldEdit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.worldedit;
+
+import com.flowpowered.math.vector.Vector3i;
+import org.spongepowered.api.GameRegistry;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.block.BlockSnapshot;
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.block.BlockType;
+import org.spongepowered.api.block.tileentity.TileEntity;
+import org.spongepowered.api.data.DataContainer;
+import org.spongepowered.api.data.DataQuery;
+import org.spongepowered.api.data.DataView;
+import org.spongepowered.api.scheduler.Scheduler;
+import org.spongepowered.api.world.BlockChangeFlag;
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.World;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiFunction;
+
+import javax.annotation.Nullable;
+
+/**
+ * Fixtures for the tests and the benchmarks. A bootstrapped Lantern server isn't
+ * available, so the registries and worlds are replaced by lightweight proxies.
+ */
+final class TestFixtures {
+
+    static final int BLOCK_TYPES = 256;
+
+    /**
+     * Creates a proxy for the given interface, methods that aren't handled
+     * return the proxy itself for builder methods and default values otherwise.
+     *
+     * @param type The interface
+     * @param handlers The handlers, mapped by method name
+     * @param <T> The type of the interface
+     * @return The proxy
+     */
+    static <T> T proxy(Class<T> type, Map<String, BiFunction<Method, Object[], Object>> handlers) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            final BiFunction<Method, Object[], Object> handler = handlers.get(method.getName());
+            if (handler != null) {
+                return handler.apply(method, args);
+            }
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+            }
+            final Class<?> returnType = method.getReturnType();
+            if (returnType.isInstance(proxy)) {
+                return proxy;
+            } else if (returnType == Optional.class) {
+                return Optional.empty();
+            } else if (returnType == boolean.class) {
+                return false;
+            } else if (returnType == int.class || returnType == short.class || returnType == byte.class || returnType == char.class) {
+                return 0;
+            } else if (returnType == long.class) {
+                return 0L;
+            } else if (returnType == float.class) {
+                return 0f;
+            } else if (returnType == double.class) {
+                return 0.0;
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Builds a {@link BlockStateTable} of proxied block types with 16 states each
+     * and installs it as the current table.
+     *
+     * @return The block states, indexed by {@code id << 4 | data}
+     */
+    static BlockState[] installBlockStateTable() {
+        final BlockState[] states = new BlockState[BLOCK_TYPES << 4];
+        final BlockType[] types = new BlockType[1 << 12];
+        final Map<BlockState, Integer> idAndDataByState = new IdentityHashMap<>();
+        final Map<BlockType, Integer> idByType = new IdentityHashMap<>();
+        for (int id = 0; id < BLOCK_TYPES; id++) {
+            final BlockState[] typeStates = new BlockState[16];
+            final Map<String, BiFunction<Method, Object[], Object>> typeHandlers = new HashMap<>();
+            typeHandlers.put("getDefaultState", (method, args) -> typeStates[0]);
+            final BlockType type = proxy(BlockType.class, typeHandlers);
+            for (int data = 0; data < 16; data++) {
+                final Map<String, BiFunction<Method, Object[], Object>> stateHandlers = new HashMap<>();
+                stateHandlers.put("getType", (method, args) -> type);
+                final BlockState state = proxy(BlockState.class, stateHandlers);
+                typeStates[data] = state;
+                states[id << 4 | data] = state;
+                idAndDataByState.put(state, id << 4 | data);
+            }
+            types[id] = type;
+            idByType.put(type, id);
+        }
+        final BlockState[] statesByIdAndData = Arrays.copyOf(states, 1 << 16);
+        setStatic(BlockStateTable.class, BlockStateTable.class,
+                new BlockStateTable(statesByIdAndData, types, idAndDataByState, idByType));
+        return states;
+    }
+
+    /**
+     * Creates a proxied {@link World} that stores its blocks in a array, the
+     * size of the world is limited to the given amount of chunks.
+     *
+     * @param chunks The size of the world in chunks, along the x and z axis
+     * @param fill The block state to fill the world with
+     * @return The world
+     */
+    static World createWorld(int chunks, BlockState fill) {
+        return createWorld(chunks, fill, null);
+    }
+
+    /**
+     * Creates a proxied {@link World} that stores its blocks in a array, the
+     * size of the world is limited to the given amount of chunks. All the block
+     * changes are passed to the listener.
+     *
+     * @param chunks The size of the world in chunks, along the x and z axis
+     * @param fill The block state to fill the world with
+     * @param listener The listener of the block changes
+     * @return The world
+     */
+    static World createWorld(int chunks, BlockState fill, @Nullable ChangeListener listener) {
+        final int size = chunks << 4;
+        final BlockState[] blocks = new BlockState[size * size * 256];
+        Arrays.fill(blocks, fill);
+        final Map<String, BiFunction<Method, Object[], Object>> chunkHandlers = new HashMap<>();
+        chunkHandlers.put("getTileEntities", (method, args) -> Collections.<TileEntity>emptyList());
+        chunkHandlers.put("setBlock", (method, args) -> {
+            blocks[index(size, (int) args[0], (int) args[1], (int) args[2])] = (BlockState) args[3];
+            if (listener != null) {
+                listener.onChange((int) args[0], (int) args[1], (int) args[2], (BlockState) args[3],
+                        args.length > 4 ? (BlockChangeFlag) args[4] : null);
+            }
+            return true;
+        });
+        chunkHandlers.put("getBlock", (method, args) -> blocks[index(size, (int) args[0], (int) args[1], (int) args[2])]);
+        final Chunk chunk = proxy(Chunk.class, chunkHandlers);
+        final Map<String, BiFunction<Method, Object[], Object>> worldHandlers = new HashMap<>(chunkHandlers);
+        worldHandlers.put("loadChunk", (method, args) -> Optional.of(chunk));
+        worldHandlers.put("getChunk", (method, args) -> Optional.of(chunk));
+        worldHandlers.put("getTileEntity", (method, args) -> Optional.empty());
+        worldHandlers.put("getName", (method, args) -> "test");
+        return proxy(World.class, worldHandlers);
+    }
+
+    @FunctionalInterface
+    interface ChangeListener {
+
+        void onChange(int x, int y, int z, BlockState state, @Nullable BlockChangeFlag flag);
+    }
+
+    private static int index(int size, int x, int y, int z) {
+        return (y * size + z) * size + x;
+    }
+
+    /**
+     * Installs a {@link Scheduler} that ignores all the submitted tasks.
+     */
+    static void installScheduler() {
+        setStatic(Sponge.class, Scheduler.class, proxy(Scheduler.class, new HashMap<>()));
+    }
+
+    /**
+     * Installs a {@link GameRegistry} that provides {@link BlockSnapshot} builders, the
+     * built snapshots are restored into the given world. This is used by the block
+     * changes of the {@code SpongeWorld} of WorldEdit.
+     *
+     * @param world The world to restore the snapshots into
+     */
+    static void installRegistry(World world) {
+        final Map<String, BiFunction<Method, Object[], Object>> registryHandlers = new HashMap<>();
+        registryHandlers.put("createBuilder", (method, args) -> {
+            if (args[0] != BlockSnapshot.Builder.class) {
+                throw new UnsupportedOperationException("Unsupported builder: " + args[0]);
+            }
+            final BlockState[] state = new BlockState[1];
+            final Vector3i[] position = new Vector3i[1];
+            final Map<String, BiFunction<Method, Object[], Object>> snapshotHandlers = new HashMap<>();
+            snapshotHandlers.put("getState", (method1, args1) -> state[0]);
+            snapshotHandlers.put("getPosition", (method1, args1) -> position[0]);
+            snapshotHandlers.put("restore", (method1, args1) -> world.setBlock(position[0].getX(), position[0].getY(),
+                    position[0].getZ(), state[0], (BlockChangeFlag) args1[1]));
+            final BlockSnapshot snapshot = proxy(BlockSnapshot.class, snapshotHandlers);
+            final Map<String, BiFunction<Method, Object[], Object>> builderHandlers = new HashMap<>();
+            final BlockSnapshot.Builder[] builder = new BlockSnapshot.Builder[1];
+            builderHandlers.put("blockState", (method1, args1) -> {
+                state[0] = (BlockState) args1[0];
+                return builder[0];
+            });
+            builderHandlers.put("position", (method1, args1) -> {
+                position[0] = (Vector3i) args1[0];
+                return builder[0];
+            });
+            builderHandlers.put("build", (method1, args1) -> snapshot);
+            builder[0] = proxy(BlockSnapshot.Builder.class, builderHandlers);
+            return builder[0];
+        });
+        setStatic(Sponge.class, GameRegistry.class, proxy(GameRegistry.class, registryHandlers));
+    }
+
+    private static void setStatic(Class<?> target, Class<?> fieldType, Object value) {
+        for (Field field : target.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == fieldType) {
+                try {
+                    field.setAccessible(true);
+                    field.set(null, value);
+                    return;
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        throw new IllegalStateException("Unable to find a static " + fieldType.getSimpleName() + " field in " + target.getName());
+    }
+
+    /**
+     * Creates the data of a chest that is filled with enchanted tools.
+     *
+     * @return The data view
+     */
+    static DataView createChest() {
+        final DataView view = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+        view.set(DataQuery.of("id"), "minecraft:chest");
+        view.set(DataQuery.of("CustomName"), "Storage");
+        final List<DataView> items = new ArrayList<>();
+        for (int slot = 0; slot < 27; slot++) {
+            final DataView item = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+            item.set(DataQuery.of("id"), "minecraft:diamond_pickaxe");
+            item.set(DataQuery.of("Count"), (byte) 1);
+            item.set(DataQuery.of("Damage"), (short) slot);
+            item.set(DataQuery.of("Slot"), (byte) slot);
+            final List<DataView> enchantments = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                final DataView enchantment = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+                enchantment.set(DataQuery.of("id"), (short) (32 + i));
+                enchantment.set(DataQuery.of("lvl"), (short) 3);
+                enchantments.add(enchantment);
+            }
+            item.createView(DataQuery.of("tag")).set(DataQuery.of("ench"), enchantments);
+            items.add(item);
+        }
+        view.set(DataQuery.of("Items"), items);
+        return view;
+    }
+
+    /**
+     * Creates the data of a sign with four lines of text.
+     *
+     * @return The data view
+     */
+    static DataView createSign() {
+        final DataView view = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+        view.set(DataQuery.of("id"), "minecraft:sign");
+        for (int i = 1; i <= 4; i++) {
+            view.set(DataQuery.of("Text" + i), "{\"text\":\"Line " + i + "\",\"color\":\"gold\"}");
+        }
+        return view;
+    }
+
+    /**
+     * Creates the data of a mob spawner with multiple spawn potentials.
+     *
+     * @return The data view
+     */
+    static DataView createSpawner() {
+        final DataView view = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+        view.set(DataQuery.of("id"), "minecraft:mob_spawner");
+        view.set(DataQuery.of("Delay"), (short) 20);
+        view.set(DataQuery.of("MinSpawnDelay"), (short) 200);
+        view.set(DataQuery.of("MaxSpawnDelay"), (short) 800);
+        view.set(DataQuery.of("SpawnCount"), (short) 4);
+        view.set(DataQuery.of("MaxNearbyEntities"), (short) 6);
+        view.set(DataQuery.of("RequiredPlayerRange"), (short) 16);
+        view.set(DataQuery.of("SpawnRange"), (short) 4);
+        view.createView(DataQuery.of("SpawnData")).set(DataQuery.of("id"), "minecraft:zombie");
+        final List<DataView> potentials = new ArrayList<>();
+        for (String entity : new String[] { "minecraft:zombie", "minecraft:skeleton", "minecraft:spider" }) {
+            final DataView potential = DataContainer.createNew(DataView.SafetyMode.NO_DATA_CLONED);
+            potential.set(DataQuery.of("Weight"), 1);
+            final DataView entityView = potential.createView(DataQuery.of("Entity"));
+            entityView.set(DataQuery.of("id"), entity);
+            entityView.set(DataQuery.of("Pos"), Arrays.asList(0.5, 64.0, 0.5));
+            entityView.set(DataQuery.of("Rotation"), Arrays.asList(0f, 0f));
+            potentials.add(potential);
+        }
+        view.set(DataQuery.of("SpawnPotentials"), potentials);
+        return view;
+    }
+
+    private TestFixtures() {
+    }
+}